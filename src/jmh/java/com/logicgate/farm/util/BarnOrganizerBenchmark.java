@@ -0,0 +1,172 @@
+package com.logicgate.farm.util;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Throughput of the organizer methods that run under a color's lock, for a single color of the given size and
+ * layout.  Run with ./gradlew jmh, the GC profiler adds the allocation rate (gc.alloc.rate.norm is bytes/op).
+ * distributeAnimals is private and is measured through initializeAnimals, which does little else.  assignIds lays
+ * out the same farm with {@link LayoutEngine}, as ids rather than entities.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BarnOrganizerBenchmark {
+
+  @Param({"100", "10000", "1000000", "10000000"})
+  private int animalCount;
+
+  @Param({"BALANCED", "OVERFULL", "CONSOLIDATION"})
+  private Layout layout;
+
+  private final BarnOrganizer barnOrganizer = new BarnOrganizer();
+
+  private List<Animal> animals;
+
+  private Map<Long, Integer> headCounts;
+
+  @Setup(Level.Trial)
+  public void createAnimals() {
+    animals = new ArrayList<>(animalCount);
+    for (int i = 0; i < animalCount; i++) {
+      // one shared name keeps the setup of the largest farms within a reasonable heap
+      animals.add(new Animal("Animal", Color.RED));
+    }
+    headCounts = new LinkedHashMap<>();
+    int[] layoutCounts = layout.headCounts(animalCount);
+    for (int i = 0; i < layoutCounts.length; i++) {
+      headCounts.put((long) i, layoutCounts[i]);
+    }
+  }
+
+  @Benchmark
+  public List<Animal> organizeAnimals(Barns barns) {
+    return barnOrganizer.organizeAnimals(barns.barns);
+  }
+
+  @Benchmark
+  public List<List<Animal>> initializeAnimals() {
+    return barnOrganizer.initializeAnimals(animals);
+  }
+
+  @Benchmark
+  public RebalancePlan planMoves() {
+    return barnOrganizer.planMoves(headCounts, 0);
+  }
+
+  @Benchmark
+  public LayoutPlan assignIds(AnimalBarnIds ids) {
+    return LayoutEngine.assign(ids.barnIds, ids.animalBarnIds);
+  }
+
+  // organizeAnimals reorganizes its argument in place, so its barns are rebuilt before every call
+  @State(Scope.Thread)
+  public static class Barns {
+
+    private Map<Barn, List<Animal>> barns;
+
+    @Setup(Level.Invocation)
+    public void createBarns(BarnOrganizerBenchmark farm) {
+      // barns have no id (and so no usable equals) until persisted, they are told apart by identity
+      barns = new IdentityHashMap<>();
+      int animalIndex = 0;
+      for (int headCount : farm.layout.headCounts(farm.animalCount)) {
+        barns.put(new Barn("Barn", Color.RED),
+            new ArrayList<>(farm.animals.subList(animalIndex, animalIndex + headCount)));
+        animalIndex += headCount;
+      }
+    }
+
+  }
+
+  // the same layout as primitive ids for LayoutEngine, which also reassigns in place
+  @State(Scope.Thread)
+  public static class AnimalBarnIds {
+
+    private long[] barnIds;
+
+    private long[] animalBarnIds;
+
+    @Setup(Level.Invocation)
+    public void createIds(BarnOrganizerBenchmark farm) {
+      int[] headCounts = farm.layout.headCounts(farm.animalCount);
+      barnIds = new long[headCounts.length];
+      animalBarnIds = new long[farm.animalCount];
+      int animalIndex = 0;
+      for (int barn = 0; barn < headCounts.length; barn++) {
+        barnIds[barn] = barn + 1L;
+        Arrays.fill(animalBarnIds, animalIndex, animalIndex + headCounts[barn], barnIds[barn]);
+        animalIndex += headCounts[barn];
+      }
+    }
+
+  }
+
+  public enum Layout {
+
+    // as many barns as required, evenly populated - the organizer has nothing to move
+    BALANCED {
+      @Override
+      int[] headCounts(int animalCount) {
+        return balanced(animalCount, BarnOrganizer.barnsRequired(animalCount));
+      }
+    },
+
+    // as many barns as required, but every animal that doesn't fit a barn at base - 1 is piled into the first one
+    OVERFULL {
+      @Override
+      int[] headCounts(int animalCount) {
+        int barnCount = BarnOrganizer.barnsRequired(animalCount);
+        int[] headCounts = new int[barnCount];
+        int lowerCount = Math.max(animalCount / barnCount - 1, 0);
+        for (int i = 1; i < barnCount; i++) {
+          headCounts[i] = lowerCount;
+        }
+        headCounts[0] = animalCount - lowerCount * (barnCount - 1);
+        return headCounts;
+      }
+    },
+
+    // a quarter more barns than required, evenly populated - the emptiest barns have to be drained
+    CONSOLIDATION {
+      @Override
+      int[] headCounts(int animalCount) {
+        int barnCount = BarnOrganizer.barnsRequired(animalCount);
+        return balanced(animalCount, barnCount + Math.max(barnCount / 4, 1));
+      }
+    };
+
+    abstract int[] headCounts(int animalCount);
+
+    private static int[] balanced(int animalCount, int barnCount) {
+      int[] headCounts = new int[barnCount];
+      for (int i = 0; i < barnCount; i++) {
+        headCounts[i] = animalCount / barnCount + (i < animalCount % barnCount ? 1 : 0);
+      }
+      return headCounts;
+    }
+
+  }
+
+}
@@ -0,0 +1,14 @@
+package com.logicgate.farm.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Both the Hibernate second-level cache and the Spring caches live in the single JCache (Ehcache) cache manager
+ * configured by ehcache.xml, where every region is bounded and collects hit/miss statistics.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfiguration {
+
+}
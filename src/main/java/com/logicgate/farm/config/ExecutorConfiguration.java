@@ -0,0 +1,59 @@
+package com.logicgate.farm.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+public class ExecutorConfiguration {
+
+  /**
+   * Bounded pool used to ingest the colors of a bulk load in parallel, one color per worker.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor ingestExecutor(FarmProperties farmProperties) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(farmProperties.getIngest().getParallelism());
+    executor.setMaxPoolSize(farmProperties.getIngest().getParallelism());
+    executor.setThreadNamePrefix("farm-ingest-");
+    return executor;
+  }
+
+  /**
+   * Pool that drains the per color mailboxes of the asynchronous service, at most one worker per color at a time.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor mailboxExecutor(FarmProperties farmProperties) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(farmProperties.getMailbox().getParallelism());
+    executor.setMaxPoolSize(farmProperties.getMailbox().getParallelism());
+    executor.setThreadNamePrefix("farm-mailbox-");
+    return executor;
+  }
+
+  /**
+   * Pool that reads every shard at once when the farm is sharded, one worker per shard.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor shardExecutor(FarmProperties farmProperties) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(Math.max(1, farmProperties.getSharding().getShards().size()));
+    executor.setMaxPoolSize(Math.max(1, farmProperties.getSharding().getShards().size()));
+    executor.setThreadNamePrefix("farm-shard-");
+    return executor;
+  }
+
+  /**
+   * Single thread that runs the deferred consolidations of dirty colors and the rebalancing of striped colors, one
+   * color after the other.
+   */
+  @Bean
+  public ThreadPoolTaskScheduler consolidationScheduler() {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(1);
+    scheduler.setThreadNamePrefix("farm-consolidation-");
+    return scheduler;
+  }
+
+}
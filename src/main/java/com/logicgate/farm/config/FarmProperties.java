@@ -0,0 +1,421 @@
+package com.logicgate.farm.config;
+
+import com.logicgate.farm.domain.Color;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tuning knobs for the farm, bound from the {@code farm} section of the application configuration.
+ */
+@Component
+@ConfigurationProperties(prefix = "farm")
+public class FarmProperties {
+
+  private final Consolidation consolidation = new Consolidation();
+
+  private final Ingest ingest = new Ingest();
+
+  private final Journal journal = new Journal();
+
+  private final Locking locking = new Locking();
+
+  private final Mailbox mailbox = new Mailbox();
+
+  private final Read read = new Read();
+
+  private final Sharding sharding = new Sharding();
+
+  private final Snapshot snapshot = new Snapshot();
+
+  public Consolidation getConsolidation() {
+    return consolidation;
+  }
+
+  public Ingest getIngest() {
+    return ingest;
+  }
+
+  public Journal getJournal() {
+    return journal;
+  }
+
+  public Locking getLocking() {
+    return locking;
+  }
+
+  public Mailbox getMailbox() {
+    return mailbox;
+  }
+
+  public Read getRead() {
+    return read;
+  }
+
+  public Sharding getSharding() {
+    return sharding;
+  }
+
+  public Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  public static class Consolidation {
+
+    // removals only delete their animals, the barns they leave behind are consolidated in the background
+    private boolean deferred;
+
+    // longest a removal waits for its color to be consolidated
+    private long maxDelayMillis = 200;
+
+    // removals of a color that get it consolidated right away, without waiting out the delay
+    private int maxPendingChanges = 1000;
+
+    public boolean isDeferred() {
+      return deferred;
+    }
+
+    public void setDeferred(boolean deferred) {
+      this.deferred = deferred;
+    }
+
+    public long getMaxDelayMillis() {
+      return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis(long maxDelayMillis) {
+      this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxPendingChanges() {
+      return maxPendingChanges;
+    }
+
+    public void setMaxPendingChanges(int maxPendingChanges) {
+      this.maxPendingChanges = maxPendingChanges;
+    }
+
+  }
+
+  public static class Ingest {
+
+    // number of written animals after which the persistence context is flushed and cleared, 0 to disable
+    private int flushSize = 1000;
+
+    // number of colors ingested in parallel by a bulk ingest
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // number of animals parsed from a streamed upload before they are handed to the service
+    private int streamChunkSize = 5000;
+
+    public int getFlushSize() {
+      return flushSize;
+    }
+
+    public void setFlushSize(int flushSize) {
+      this.flushSize = flushSize;
+    }
+
+    public int getParallelism() {
+      return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+      this.parallelism = parallelism;
+    }
+
+    public int getStreamChunkSize() {
+      return streamChunkSize;
+    }
+
+    public void setStreamChunkSize(int streamChunkSize) {
+      this.streamChunkSize = streamChunkSize;
+    }
+
+  }
+
+  public static class Journal {
+
+    // append every committed change to the journal
+    private boolean enabled;
+
+    // directory holding the journal segments
+    private String directory = "journal";
+
+    // records per segment file, each record takes 18 bytes
+    private int segmentRecords = 1000000;
+
+    // only return from a commit once its records are on disk
+    private boolean fsync = true;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+      return directory;
+    }
+
+    public void setDirectory(String directory) {
+      this.directory = directory;
+    }
+
+    public int getSegmentRecords() {
+      return segmentRecords;
+    }
+
+    public void setSegmentRecords(int segmentRecords) {
+      this.segmentRecords = segmentRecords;
+    }
+
+    public boolean isFsync() {
+      return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+      this.fsync = fsync;
+    }
+
+  }
+
+  public static class Locking {
+
+    // LOCAL serializes writers of a color within this JVM, DATABASE also locks the color's partition row
+    private LockMode mode = LockMode.LOCAL;
+
+    // colors written without taking their lock, a writer retries when another one committed the color first
+    private Set<Color> optimisticColors = EnumSet.noneOf(Color.class);
+
+    // attempts an optimistic write gets before its conflict is passed on to the caller
+    private int maxAttempts = 8;
+
+    // the backoff before a retry doubles from the initial one up to the max, each wait is a random share of it
+    private long initialBackoffMillis = 2;
+
+    private long maxBackoffMillis = 100;
+
+    // lock stripes of each hot color, a single add then only locks the stripe it goes into
+    private Map<Color, Integer> stripes = new EnumMap<>(Color.class);
+
+    // how often striped colors are checked for barns that drifted apart, and rebalanced if they did
+    private long stripeBalanceMillis = 100;
+
+    public LockMode getMode() {
+      return mode;
+    }
+
+    public void setMode(LockMode mode) {
+      this.mode = mode;
+    }
+
+    public Set<Color> getOptimisticColors() {
+      return optimisticColors;
+    }
+
+    public void setOptimisticColors(Set<Color> optimisticColors) {
+      this.optimisticColors = optimisticColors;
+    }
+
+    public int getMaxAttempts() {
+      return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+      return initialBackoffMillis;
+    }
+
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+      this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+      return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+      this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public Map<Color, Integer> getStripes() {
+      return stripes;
+    }
+
+    public void setStripes(Map<Color, Integer> stripes) {
+      this.stripes = stripes;
+    }
+
+    public long getStripeBalanceMillis() {
+      return stripeBalanceMillis;
+    }
+
+    public void setStripeBalanceMillis(long stripeBalanceMillis) {
+      this.stripeBalanceMillis = stripeBalanceMillis;
+    }
+
+  }
+
+  public static class Mailbox {
+
+    // most requests a color's writer applies in a single transaction
+    private int batchSize = 500;
+
+    // number of colors whose mailboxes are drained at the same time
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    public int getParallelism() {
+      return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+      this.parallelism = parallelism;
+    }
+
+  }
+
+  public static class Read {
+
+    // animals read per keyset page when streaming the whole farm
+    private int pageSize = 1000;
+
+    public int getPageSize() {
+      return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+      this.pageSize = pageSize;
+    }
+
+  }
+
+  public static class Sharding {
+
+    // spread the colors over the shards below instead of keeping the whole farm in spring.datasource
+    private boolean enabled;
+
+    // color n lives on shard n modulo the number of shards
+    private final List<Shard> shards = new ArrayList<>();
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public List<Shard> getShards() {
+      return shards;
+    }
+
+  }
+
+  public static class Shard {
+
+    private String url;
+
+    private String username = "sa";
+
+    private String password = "";
+
+    public String getUrl() {
+      return url;
+    }
+
+    public void setUrl(String url) {
+      this.url = url;
+    }
+
+    public String getUsername() {
+      return username;
+    }
+
+    public void setUsername(String username) {
+      this.username = username;
+    }
+
+    public String getPassword() {
+      return password;
+    }
+
+    public void setPassword(String password) {
+      this.password = password;
+    }
+
+  }
+
+  public static class Snapshot {
+
+    // file the farm is restored from at startup and exported to at shutdown, when enabled below
+    private String path = "farm.snapshot";
+
+    // restore an empty farm from the snapshot, if there is one, before the application starts serving
+    private boolean restoreOnStartup;
+
+    // export the farm to the snapshot when the application shuts down
+    private boolean exportOnShutdown;
+
+    // rows inserted per JDBC batch while restoring
+    private int batchSize = 10000;
+
+    public String getPath() {
+      return path;
+    }
+
+    public void setPath(String path) {
+      this.path = path;
+    }
+
+    public boolean isRestoreOnStartup() {
+      return restoreOnStartup;
+    }
+
+    public void setRestoreOnStartup(boolean restoreOnStartup) {
+      this.restoreOnStartup = restoreOnStartup;
+    }
+
+    public boolean isExportOnShutdown() {
+      return exportOnShutdown;
+    }
+
+    public void setExportOnShutdown(boolean exportOnShutdown) {
+      this.exportOnShutdown = exportOnShutdown;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+  }
+
+  public enum LockMode {
+    LOCAL,
+    DATABASE
+  }
+
+}
@@ -0,0 +1,81 @@
+package com.logicgate.farm.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Hands out connections of the shard selected for the current thread, shard 0 when none is.  A transaction keeps the
+ * connection it began with, so the shard has to be selected before the transaction starts.
+ * </p>
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+  private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+  private final List<DataSource> shards;
+
+  public ShardRoutingDataSource(List<DataSource> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalStateException("Sharding needs at least one shard.");
+    }
+    this.shards = Collections.unmodifiableList(shards);
+    Map<Object, Object> targets = new HashMap<>();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      targets.put(shard, shards.get(shard));
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(shards.get(0));
+  }
+
+  public List<DataSource> getShards() {
+    return shards;
+  }
+
+  /**
+   * <p>
+   * The shard selected for the current thread.
+   * </p>
+   * @return the shard index, 0 when none was selected
+   */
+  public static int currentShard() {
+    Integer shard = CURRENT_SHARD.get();
+    return shard == null ? 0 : shard;
+  }
+
+  /**
+   * <p>
+   * Run work against a shard, restoring the previous selection afterwards.
+   * </p>
+   * @param shard the shard index
+   * @param work the work, starting any transaction of its own
+   * @return the result of the work
+   */
+  public static <T> T onShard(int shard, Supplier<T> work) {
+    Integer previous = CURRENT_SHARD.get();
+    CURRENT_SHARD.set(shard);
+    try {
+      return work.get();
+    }
+    finally {
+      if (previous == null) {
+        CURRENT_SHARD.remove();
+      }
+      else {
+        CURRENT_SHARD.set(previous);
+      }
+    }
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return currentShard();
+  }
+
+}
@@ -0,0 +1,89 @@
+package com.logicgate.farm.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Replaces the single spring.datasource with one pool per configured shard behind a {@link ShardRoutingDataSource},
+ * when {@code farm.sharding.enabled} is set.  Every shard gets the whole schema from the Flyway migrations.
+ * </p>
+ *
+ * <p>
+ * Ids have to stay unique across shards, since barns are cached by id and the farm is read back from every shard
+ * at once.  The sequences of shard n therefore start at n * 2^40, so a block of ids drawn from one shard's sequence
+ * never overlaps one drawn from another's.  Hibernate keeps a single pooled optimizer per entity rather than one per
+ * shard though, so a block drawn through one shard goes on to be used for inserts on whichever shard comes next.
+ * Ids are unique but shards don't hold ranges of their own, and reading the farm in id order means merging the
+ * shards by id.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "farm.sharding", name = "enabled", havingValue = "true")
+public class ShardingConfiguration {
+
+  // ids available to each shard
+  public static final long SHARD_ID_BLOCK = 1L << 40;
+
+  private static final String[] SEQUENCES = {"animal_seq", "barn_seq"};
+
+  // ids are handed out in blocks of this size ending at the value drawn from the sequence, see META-INF/orm.xml
+  private static final int ID_ALLOCATION_SIZE = 50;
+
+  @Bean
+  @Primary
+  public ShardRoutingDataSource dataSource(FarmProperties farmProperties) {
+    List<DataSource> shards = new ArrayList<>();
+    for (FarmProperties.Shard shard : farmProperties.getSharding().getShards()) {
+      shards.add(DataSourceBuilder.create()
+          .type(HikariDataSource.class)
+          .url(shard.getUrl())
+          .username(shard.getUsername())
+          .password(shard.getPassword())
+          .build());
+    }
+    return new ShardRoutingDataSource(shards);
+  }
+
+  /**
+   * Migrates every shard rather than just the routing data source's default one, then moves each shard's sequences
+   * into its id block.
+   */
+  @Bean
+  public FlywayMigrationStrategy flywayMigrationStrategy(ShardRoutingDataSource dataSource) {
+    return flyway -> {
+      List<DataSource> shards = dataSource.getShards();
+      for (int shard = 0; shard < shards.size(); shard++) {
+        Flyway.configure()
+            .configuration(flyway.getConfiguration())
+            .dataSource(shards.get(shard))
+            .load()
+            .migrate();
+        moveSequences(new JdbcTemplate(shards.get(shard)), shard * SHARD_ID_BLOCK);
+      }
+    };
+  }
+
+  // a sequence that is still below the shard's block is restarted at its start, a block of ids past it
+  private static void moveSequences(JdbcTemplate jdbcTemplate, long blockStart) {
+    for (String sequence : SEQUENCES) {
+      Long nextValue = jdbcTemplate.queryForObject(String.format("select next value for %s", sequence), Long.class);
+      if (nextValue == null || nextValue <= blockStart) {
+        jdbcTemplate.execute(String.format("alter sequence %s restart with %d", sequence,
+            blockStart + ID_ALLOCATION_SIZE + 1));
+      }
+    }
+  }
+
+}
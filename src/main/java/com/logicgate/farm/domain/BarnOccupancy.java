@@ -0,0 +1,61 @@
+package com.logicgate.farm.domain;
+
+import java.io.Serializable;
+import java.util.Optional;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Head count of a single barn, kept in step with the animal table by every write so that planning never has to
+ * count animals.
+ */
+@Entity(name = "barn_occupancy")
+public class BarnOccupancy implements Serializable {
+
+  private static final long serialVersionUID = -2291840155873305174L;
+
+  @Id
+  @Column(name = "barn_id")
+  protected Long barnId;
+
+  @Column(name = "color")
+  protected Color color;
+
+  @Column(name = "head_count")
+  protected Integer headCount = 0;
+
+  protected BarnOccupancy() {
+    // default constructor
+  }
+
+  public Long getBarnId() {
+    return barnId;
+  }
+
+  public Color getColor() {
+    return color;
+  }
+
+  public Integer getHeadCount() {
+    return headCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BarnOccupancy[barnId=%d, color=%s, headCount=%d]", barnId, color.name(), headCount);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Optional.ofNullable(obj).isPresent()
+      && (obj == this || (obj.getClass() == getClass() && ((BarnOccupancy) obj).getBarnId().equals(getBarnId())));
+  }
+
+  @Override
+  public int hashCode() {
+    return barnId.hashCode();
+  }
+
+}
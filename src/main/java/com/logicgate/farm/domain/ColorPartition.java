@@ -0,0 +1,62 @@
+package com.logicgate.farm.domain;
+
+import java.io.Serializable;
+import java.util.Optional;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * One row per color, locked by writers of that color and bumped on every change to the color's barn layout.
+ */
+@Entity(name = "color_partition")
+public class ColorPartition implements Serializable {
+
+  private static final long serialVersionUID = 3819047521993281757L;
+
+  @Id
+  @Column(name = "color")
+  protected Color color;
+
+  @Column(name = "layout_version")
+  protected Long layoutVersion = 0L;
+
+  protected ColorPartition() {
+    // default constructor
+  }
+
+  public ColorPartition(Color color) {
+    this.color = color;
+  }
+
+  public Color getColor() {
+    return color;
+  }
+
+  public Long getLayoutVersion() {
+    return layoutVersion;
+  }
+
+  public ColorPartition incrementLayoutVersion() {
+    this.layoutVersion++;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ColorPartition[color=%s, layoutVersion=%d]", color.name(), layoutVersion);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Optional.ofNullable(obj).isPresent()
+      && (obj == this || (obj.getClass() == getClass() && ((ColorPartition) obj).getColor() == getColor()));
+  }
+
+  @Override
+  public int hashCode() {
+    return color.hashCode();
+  }
+
+}
@@ -2,15 +2,58 @@ package com.logicgate.farm.repository;
 
 import com.logicgate.farm.domain.Animal;
 
+import com.logicgate.farm.domain.Barn;
 import com.logicgate.farm.domain.Color;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface AnimalRepository extends JpaRepository<Animal, Long> {
 
+  // barns are fetched in the same select rather than once per distinct barn
+  @Override
+  @EntityGraph(attributePaths = "barn")
+  List<Animal> findAll();
+
+  @EntityGraph(attributePaths = "barn")
+  @Query("select a from animal a where a.id > :afterId order by a.id")
+  List<Animal> findAnimalsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+  @Query("select a.id as id, a.name as name, a.favoriteColor as favoriteColor, b.id as barnId "
+      + "from animal a left join a.barn b where a.id > :afterId order by a.id")
+  List<AnimalSummary> findAnimalSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
+
   List<Animal> findAnimalsByFavoriteColor(Color color);
 
+  @Query("select a.id from animal a where a.barn.id = :barnId order by a.id")
+  List<Long> findAnimalIdsByBarnId(@Param("barnId") Long barnId, Pageable pageable);
+
+  @Modifying(flushAutomatically = true)
+  @Query("update animal a set a.barn = :barn where a.id in :ids")
+  int moveAnimalsToBarn(@Param("barn") Barn barn, @Param("ids") Collection<Long> ids);
+
+  @Modifying(flushAutomatically = true)
+  @Query("delete from animal a where a.favoriteColor = :color and a.id in :ids")
+  int deleteAnimalsByIds(@Param("color") Color color, @Param("ids") Collection<Long> ids);
+
+  @Query("select b.id as barnId, b.color as color, count(a) as headCount from animal a join a.barn b "
+      + "group by b.id, b.color")
+  List<BarnHeadCount> countAnimalsByBarn();
+
+  @Query("select b.id as barnId, b.color as color, count(a) as headCount from animal a join a.barn b "
+      + "where b.color = :color group by b.id, b.color")
+  List<BarnHeadCount> countAnimalsByBarn(@Param("color") Color color);
+
+  @Query("select a.id as id, a.name as name, a.favoriteColor as favoriteColor, b.id as barnId "
+      + "from animal a join a.barn b where a.favoriteColor = :color and a.id in :ids")
+  List<AnimalSummary> findAnimalSummaries(@Param("color") Color color, @Param("ids") Collection<Long> ids);
+
 }
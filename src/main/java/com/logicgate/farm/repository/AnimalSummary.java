@@ -0,0 +1,18 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.Color;
+
+/**
+ * Read-only projection of an animal and the id of the barn it lives in, for readers that don't need managed entities.
+ */
+public interface AnimalSummary {
+
+  Long getId();
+
+  String getName();
+
+  Color getFavoriteColor();
+
+  Long getBarnId();
+
+}
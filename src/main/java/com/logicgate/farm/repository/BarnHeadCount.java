@@ -0,0 +1,16 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.Color;
+
+/**
+ * Projection of the number of animals housed in a single barn.
+ */
+public interface BarnHeadCount {
+
+  Long getBarnId();
+
+  Color getColor();
+
+  Long getHeadCount();
+
+}
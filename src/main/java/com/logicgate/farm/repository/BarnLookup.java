@@ -0,0 +1,18 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+
+import java.util.List;
+
+/**
+ * Lookups of {@link BarnRepository} that are cached by hand.  The barns of a color are cached as their ids and
+ * resolved through the second-level cache on every lookup, so no two callers are ever handed the same list or the
+ * same barns.
+ */
+public interface BarnLookup {
+
+  // evicted through BarnRepository whenever a barn of the color is built or destroyed
+  List<Barn> findBarnsByColor(Color color);
+
+}
@@ -0,0 +1,45 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * The cached lookups of {@link BarnRepository}, read-only like the repository's own queries.
+ */
+@Transactional(readOnly = true)
+public class BarnLookupImpl implements BarnLookup {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private CacheManager cacheManager;
+
+  @Override
+  public List<Barn> findBarnsByColor(Color color) {
+    List<Long> barnIds = cacheManager.getCache(BarnRepository.BARNS_BY_COLOR).get(color, () -> findBarnIds(color));
+    // a barn destroyed since its color was cached is no longer found, it is left out until the eviction lands
+    return barnIds.stream()
+        .map(barnId -> entityManager.find(Barn.class, barnId))
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  private List<Long> findBarnIds(Color color) {
+    return Collections.unmodifiableList(entityManager
+        .createQuery("select b.id from barn b where b.color = :color", Long.class)
+        .setParameter("color", color)
+        .getResultList());
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.BarnOccupancy;
+import com.logicgate.farm.domain.Color;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The barn_occupancy table is only ever read through projections and written with statements, so its rows never sit
+ * in a persistence context where they could go stale.  Inserts and recounts are native, see
+ * {@link BarnOccupancyStatements}.
+ */
+@Repository
+public interface BarnOccupancyRepository extends JpaRepository<BarnOccupancy, Long>, BarnOccupancyStatements {
+
+  @Query("select o.barnId as barnId, o.color as color, o.headCount as headCount from barn_occupancy o")
+  List<BarnHeadCount> findHeadCounts();
+
+  @Query("select o.barnId as barnId, o.color as color, o.headCount as headCount from barn_occupancy o "
+      + "where o.color = :color")
+  List<BarnHeadCount> findHeadCounts(@Param("color") Color color);
+
+  @Query("select o.barnId as barnId, o.color as color, o.headCount as headCount from barn_occupancy o "
+      + "where o.barnId in :barnIds")
+  List<BarnHeadCount> findHeadCounts(@Param("barnIds") Collection<Long> barnIds);
+
+  // the whole farm in one row per color and head count, read from the summary without touching the animal table
+  @Query("select o.color as color, o.headCount as headCount, b.capacity as capacity, count(o) as barnCount "
+      + "from barn_occupancy o, barn b where b.id = o.barnId "
+      + "group by o.color, o.headCount, b.capacity")
+  List<OccupancyBucket> findOccupancyBuckets();
+
+  @Query("select o.color as color, o.headCount as headCount, b.capacity as capacity, count(o) as barnCount "
+      + "from barn_occupancy o, barn b where b.id = o.barnId and o.color = :color "
+      + "group by o.color, o.headCount, b.capacity")
+  List<OccupancyBucket> findOccupancyBuckets(@Param("color") Color color);
+
+  @Modifying(flushAutomatically = true)
+  @Query("update barn_occupancy o set o.headCount = 0")
+  int resetHeadCounts();
+
+}
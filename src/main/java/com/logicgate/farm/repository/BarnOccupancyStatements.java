@@ -0,0 +1,18 @@
+package com.logicgate.farm.repository;
+
+import java.util.Collection;
+
+/**
+ * Writes to the barn_occupancy table that can't be expressed in JPQL, run as native statements that Hibernate is told
+ * only touch barn_occupancy.  An unsynchronized native statement would evict every second-level cache region,
+ * barns included, on every write.
+ */
+public interface BarnOccupancyStatements {
+
+  // the barn has to be inserted before its occupancy, pending changes are flushed first to take care of that
+  int insertOccupancy(Long barnId, int colorOrdinal);
+
+  // one statement for every barn an operation touched, each recounted from the animal_barn_idx index
+  int recountHeadCounts(Collection<Long> barnIds);
+
+}
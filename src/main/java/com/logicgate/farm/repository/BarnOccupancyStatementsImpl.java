@@ -0,0 +1,46 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.BarnOccupancy;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+
+/**
+ * The native statements of {@link BarnOccupancyRepository}, each synchronized with the barn_occupancy entity so that
+ * executing it only invalidates what is cached for that table.
+ */
+@Transactional
+public class BarnOccupancyStatementsImpl implements BarnOccupancyStatements {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public int insertOccupancy(Long barnId, int colorOrdinal) {
+    entityManager.flush();
+    return occupancyStatement("insert into barn_occupancy (barn_id, color, head_count) values (:barnId, :color, 0)")
+        .setParameter("barnId", barnId)
+        .setParameter("color", colorOrdinal)
+        .executeUpdate();
+  }
+
+  @Override
+  public int recountHeadCounts(Collection<Long> barnIds) {
+    entityManager.flush();
+    return occupancyStatement("update barn_occupancy o "
+        + "set head_count = (select count(*) from animal a where a.barn_id = o.barn_id) "
+        + "where o.barn_id in (:barnIds)")
+        .setParameterList("barnIds", barnIds)
+        .executeUpdate();
+  }
+
+  // a native statement that Hibernate knows only writes barn_occupancy
+  private NativeQuery<?> occupancyStatement(String sql) {
+    return entityManager.createNativeQuery(sql).unwrap(NativeQuery.class)
+        .addSynchronizedEntityClass(BarnOccupancy.class);
+  }
+
+}
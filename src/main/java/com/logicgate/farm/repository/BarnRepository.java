@@ -2,12 +2,46 @@ package com.logicgate.farm.repository;
 
 import com.logicgate.farm.domain.Barn;
 
+import com.logicgate.farm.domain.Color;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+
 @Repository
-public interface BarnRepository extends JpaRepository<Barn, Long> {
+public interface BarnRepository extends JpaRepository<Barn, Long>, BarnLookup {
+
+  // the barn ids of every color, evicted for a single color whenever a barn of that color is built or destroyed
+  String BARNS_BY_COLOR = "barnsByColor";
+
+  @Override
+  @CacheEvict(cacheNames = BARNS_BY_COLOR, key = "#p0.color")
+  <S extends Barn> S save(S barn);
+
+  @Override
+  @CacheEvict(cacheNames = BARNS_BY_COLOR, key = "#p0.color")
+  void delete(Barn barn);
+
+  @CacheEvict(cacheNames = BARNS_BY_COLOR, key = "#p0")
+  @Modifying(flushAutomatically = true)
+  @Query("delete from barn b where b.color = :color and b.id in :ids")
+  int deleteBarnsByIds(@Param("color") Color color, @Param("ids") Collection<Long> ids);
+
+  @Override
+  @CacheEvict(cacheNames = BARNS_BY_COLOR, allEntries = true)
+  void deleteAll();
+
+  @Override
+  @CacheEvict(cacheNames = BARNS_BY_COLOR, allEntries = true)
+  void deleteAllInBatch();
 
-  // additional methods can be defined here
+  @CacheEvict(cacheNames = BARNS_BY_COLOR, key = "#p0")
+  default void evictBarnsByColor(Color color) {
+    // eviction only
+  }
 
 }
@@ -0,0 +1,33 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.domain.ColorPartition;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+
+@Repository
+public interface ColorPartitionRepository extends JpaRepository<ColorPartition, Color> {
+
+  // select ... for update, the row stays locked until the surrounding transaction completes
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select p from color_partition p where p.color = :color")
+  ColorPartition lockPartition(@Param("color") Color color);
+
+  // a plain read, optimistic writers only compare it again when they commit
+  @Query("select p.layoutVersion from color_partition p where p.color = :color")
+  Long findLayoutVersion(@Param("color") Color color);
+
+  // moves the version on only if nobody else did since it was read, returns 0 otherwise
+  @Modifying(flushAutomatically = true)
+  @Query("update color_partition p set p.layoutVersion = p.layoutVersion + 1"
+      + " where p.color = :color and p.layoutVersion = :layoutVersion")
+  int advanceLayoutVersion(@Param("color") Color color, @Param("layoutVersion") Long layoutVersion);
+
+}
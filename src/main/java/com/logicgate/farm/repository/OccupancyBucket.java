@@ -0,0 +1,18 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.Color;
+
+/**
+ * Projection of the number of barns of a color that share the same head count and capacity.
+ */
+public interface OccupancyBucket {
+
+  Color getColor();
+
+  Integer getHeadCount();
+
+  Integer getCapacity();
+
+  Long getBarnCount();
+
+}
@@ -1,8 +1,11 @@
 package com.logicgate.farm.service;
 
 import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalSummary;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * This is the main service used to control the organization of animals within barns. All methods in this interface must
@@ -18,6 +21,24 @@ public interface AnimalService {
    */
   List<Animal> findAll();
 
+  /**
+   * Streams every animal in the database in id order, without holding the whole farm in memory. Animals are read a
+   * page at a time using the last id seen rather than an offset, each page with its barns fetched in the same query
+   * and in a read-only transaction of its own, so the animals handed out are detached. A page never joins the
+   * transaction the stream is consumed in, if any, and doesn't stay in its persistence context.
+   *
+   * @return every animal in the database, lazily read
+   */
+  Stream<Animal> streamAll();
+
+  /**
+   * Same as {@link #streamAll()}, but reads only the id, name, color and barn id of every animal rather than
+   * entities.
+   *
+   * @return a summary of every animal in the database, lazily read
+   */
+  Stream<AnimalSummary> streamAllSummaries();
+
   /**
    * This method is already implemented. It will remove all animals from the database.
    */
@@ -60,6 +81,12 @@ public interface AnimalService {
    * the new animal so no new barns need to be created, but the animal must be added to the barn with fewer inhabitants
    * so the available space continues to be optimized across barns.
    * </p>
+   *
+   * <p>
+   * A color configured with lock stripes only locks the stripe of barns the animal moves into, unless the caller's
+   * transaction is already running.  Its barns may then be more than one animal apart for a moment, until the color
+   * is rebalanced in the background.
+   * </p>
    * @param animal the new addition to the farm (it's so excited!) - it can be assumed that the animal will have a
    *               name and favorite color, but no barn
    * @return the persisted animal after adding it to the appropriate barn
@@ -67,13 +94,27 @@ public interface AnimalService {
   Animal addToFarm(Animal animal);
 
   /**
-   * This method is already implemented. It will iterate over the single animal implementation and is used to test.
+   * Adds a whole batch of animals. Each color is placed with a single planning pass, inserts are sent as JDBC batches
+   * and the persistence context is flushed and cleared periodically so large imports don't accumulate in memory.
+   * Unless the caller has a transaction of its own, every color commits on its own and is released as soon as it is
+   * placed.
    *
    * @param animals a whole bunch of new additions to the farm - the same assumptions can be made about each of these
    *                animals that can be made for a single addition from the previous method
    */
   void addToFarm(List<Animal> animals);
 
+  /**
+   * Bulk ingest of a whole batch of animals. Colors are independent of each other, so every color is placed on its
+   * own worker from a bounded pool and in its own transaction. A failure only rolls back the color it happened in,
+   * the other colors are still committed.
+   *
+   * @param animals a whole bunch of new additions to the farm - the same assumptions can be made about each of these
+   *                animals that can be made for a single addition
+   * @return the outcome of every color in the batch, in color order
+   */
+  List<IngestResult> ingestToFarm(List<Animal> animals);
+
   /**
    * <p>
    * An animal is moving to another farm. Afterwards, barns may need to be reorganized. Barns of the same
@@ -114,15 +155,41 @@ public interface AnimalService {
    * removal, the animals can be housed within 3 barns instead of 4 without going over capacity so one of the
    * barns must be destroyed and the animals must be redistributed.
    * </p>
+   * <p>
+   * With {@code farm.consolidation.deferred} set, removals only delete their animals and the barns are reorganized
+   * in the background shortly afterwards, see {@link #consolidate(Color)}.
+   * </p>
    * @param animal the sad friend who is moving away
    */
   void removeFromFarm(Animal animal);
 
   /**
-   * This method is already implemented. It will iterate over the single animal implementation and is used to test.
+   * Removes a whole batch of animals. Animals are grouped by color, each color is deleted with a single statement and
+   * its barns are reorganized (and consolidated) once for the whole batch rather than once per animal. As with a batch
+   * addition, every color commits on its own unless the caller has a transaction.
    *
    * @param animals the sad friends who are moving away
    */
   void removeFromFarm(List<Animal> animals);
 
+  /**
+   * Applies a set of additions and removals for a single color in one transaction, with a single reorganization of
+   * the color's barns for the whole set. The same rules apply as for the single animal methods.
+   *
+   * @param color the color every given animal favors
+   * @param arrivals new additions to the farm, without a barn
+   * @param departures animals that are moving away
+   */
+  void updateFarm(Color color, List<Animal> arrivals, List<Animal> departures);
+
+  /**
+   * Reorganizes the barns of a color right away, balancing them and destroying the ones its animals no longer need.
+   * Only ever needed when removals are deferred, where it is run in the background for every color with pending
+   * removals and can be called to catch a color up immediately. Additions are always placed within capacity, so
+   * only removals are ever left to consolidate.
+   *
+   * @param color the color to reorganize
+   */
+  void consolidate(Color color);
+
 }
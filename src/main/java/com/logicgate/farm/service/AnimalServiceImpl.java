@@ -1,22 +1,51 @@
 package com.logicgate.farm.service;
 
+import com.logicgate.farm.config.FarmProperties;
 import com.logicgate.farm.domain.Animal;
 import com.logicgate.farm.domain.Barn;
 import com.logicgate.farm.domain.Color;
 import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.AnimalSummary;
+import com.logicgate.farm.repository.BarnHeadCount;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
 import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.BarnMove;
+import com.logicgate.farm.util.BarnOccupancyIndex;
 import com.logicgate.farm.util.BarnOrganizer;
 import com.logicgate.farm.util.FarmUtils;
+import com.logicgate.farm.util.JournalRecord;
+import com.logicgate.farm.util.RebalancePlan;
+import org.springframework.beans.DirectFieldAccessor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 @Transactional
@@ -25,8 +54,8 @@ public class AnimalServiceImpl implements AnimalService {
   @Autowired
   private ApplicationContext applicationContext;
 
-  // stores locks by color to avoid excessive waiting
-  private ConcurrentHashMap<Color, Lock> colorLock = new ConcurrentHashMap<>();
+  @PersistenceContext
+  private EntityManager entityManager;
 
   private Random random = new Random();
 
@@ -34,177 +63,707 @@ public class AnimalServiceImpl implements AnimalService {
 
   private final BarnRepository barnRepository;
 
-  // find or create a barn with availability to insert an additional animal
-  private Barn findOrCreateBarnWithAvailability(Map<Barn, List<Animal>> barns, Color color) {
-    // search for a barn that isn't already at capacity
-    Optional<Barn> availableBarn = barns.entrySet().stream()
-            .filter(entry -> entry.getValue().size() < FarmUtils.barnCapacity())
-            .map(Map.Entry::getKey).findFirst();
+  private final BarnOccupancyRepository occupancyRepository;
 
-    // if we find one return it, otherwise create / persist a new one,
-    // add it to the map and return it
-    if (availableBarn.isPresent()) {
-      return availableBarn.get();
-    }
-    else {
-      Barn newBarn = new Barn(FarmUtils.barnName(color, random.nextInt()), color);
-      newBarn = barnRepository.save(newBarn);
-      barns.put(newBarn, new ArrayList<>());
-      return newBarn;
-    }
-  }
+  private final BarnOccupancyIndex occupancyIndex;
+
+  private final FarmProperties farmProperties;
+
+  private final ColorLockManager colorLockManager;
+
+  private final FarmMetrics farmMetrics;
+
+  private final FarmJournal farmJournal;
+
+  private final FarmConsolidator farmConsolidator;
+
+  private final StripeBalancer stripeBalancer;
+
+  private final ColorShards colorShards;
+
+  private final ThreadPoolTaskExecutor ingestExecutor;
+
+  // runs the work of a single color in a transaction of its own
+  private final TransactionTemplate colorTransaction;
+
+  // reads a single page of a stream in a read-only transaction of its own
+  private final TransactionTemplate pageTransaction;
+
+  // transaction resource key of the occupancy optimistic writers plan with
+  private final Object privateOccupancyKey = new Object();
 
   // create a new barn
   private Barn createNewBarn(Color color) {
     Barn newBarn = new Barn(FarmUtils.barnName(color, random.nextInt()), color);
     newBarn = barnRepository.save(newBarn);
+    occupancyRepository.insertOccupancy(newBarn.getId(), color.ordinal());
+    farmJournal.record(JournalRecord.barnCreated(color, newBarn.getId()));
     return newBarn;
   }
 
-  // remove any empty barns from map and DB
-  private void cleanupEmptyBarns(Map<Barn, List<Animal>> barns) {
-    // search for empty barns
-    List<Barn> emptyBarns = barns.entrySet().stream()
-            .filter(entry -> entry.getValue().size() == 0)
-            .map(Map.Entry::getKey).collect(Collectors.toList());
+  // remove drained barns from the index and DB, their barn_occupancy rows go with them by cascade
+  private void cleanupEmptyBarns(Color color, List<Long> emptyBarnIds) {
+    if (!emptyBarnIds.isEmpty()) {
+      BarnOccupancyIndex occupancy = occupancy(color);
+      emptyBarnIds.forEach(emptyBarnId -> occupancy.removeBarn(color, emptyBarnId));
+      barnRepository.deleteBarnsByIds(color, emptyBarnIds);
+      farmMetrics.barnsDestroyed(color, emptyBarnIds.size());
+      farmJournal.record(emptyBarnIds.stream()
+          .map(emptyBarnId -> JournalRecord.barnDestroyed(color, emptyBarnId))
+          .collect(Collectors.toList()));
+    }
+  }
+
+  // plan the layout of a color from its head counts and apply it, reading only the ids of the animals that move,
+  // changed barns are barns the caller already emptied or filled, they are recounted along with the plan's own
+  private void rebalance(Color color, List<Animal> arrivals, Collection<Long> changedBarnIds) {
+
+    // retrieve new BarnOrganizer from context
+    BarnOrganizer barnOrganizer = applicationContext.getBean(BarnOrganizer.class);
+    BarnOccupancyIndex occupancy = occupancy(color);
+
+    // build any barns the new total requires, they join the plan empty
+    int requiredBarns = BarnOrganizer.barnsRequired(occupancy.animalCount(color) + arrivals.size());
+    for (int i = occupancy.barnCount(color); i < requiredBarns; i++) {
+      occupancy.adjust(color, createNewBarn(color), 0);
+      farmMetrics.barnsCreated(color, 1);
+    }
+
+    RebalancePlan plan = farmMetrics.timePhase(FarmMetrics.Phase.PLANNING, color,
+        () -> barnOrganizer.planMoves(occupancy.headCounts(color), arrivals.size()));
+    farmMetrics.animalsMoved(color, plan.getMovedAnimalCount());
+
+    // housed animals move first, so the arrivals written afterwards can't be picked up as movers
+    moveAnimals(color, movePlan(color, plan));
+    houseArrivals(color, plan, arrivals);
+    cleanupEmptyBarns(color, plan.getDrainedBarnIds());
+
+    Set<Long> touchedBarnIds = new HashSet<>(changedBarnIds);
+    plan.getMoves().forEach(move -> {
+      if (!move.isArrival()) {
+        touchedBarnIds.add(move.getSourceBarnId());
+      }
+      touchedBarnIds.add(move.getTargetBarnId());
+    });
+    touchedBarnIds.removeAll(plan.getDrainedBarnIds());
+    recountOccupancy(touchedBarnIds);
+    flush(color);
+
+  }
+
+  // bring the barn_occupancy rows of the given barns in line with the animal table, with a single statement
+  private void recountOccupancy(Collection<Long> barnIds) {
+    if (!barnIds.isEmpty()) {
+      occupancyRepository.recountHeadCounts(barnIds);
+    }
+  }
+
+  // pick the animals leaving each source barn and group their ids by the barn they move to
+  private Map<Long, List<Long>> movePlan(Color color, RebalancePlan plan) {
+    BarnOccupancyIndex occupancy = occupancy(color);
+    Map<Long, List<BarnMove>> movesBySource = plan.getMoves().stream()
+            .filter(move -> !move.isArrival())
+            .collect(Collectors.groupingBy(BarnMove::getSourceBarnId, LinkedHashMap::new, Collectors.toList()));
+
+    Map<Long, List<Long>> animalIdsByTarget = new LinkedHashMap<>();
+    movesBySource.forEach((sourceBarnId, moves) -> {
+      // a single id query per source barn, covering every move out of it
+      int leavingCount = moves.stream().mapToInt(BarnMove::getAnimalCount).sum();
+      Iterator<Long> leavingIds = animalRepository.findAnimalIdsByBarnId(sourceBarnId,
+          PageRequest.of(0, leavingCount)).iterator();
+      for (BarnMove move : moves) {
+        List<Long> animalIds = animalIdsByTarget.computeIfAbsent(move.getTargetBarnId(), id -> new ArrayList<>());
+        for (int i = 0; i < move.getAnimalCount(); i++) {
+          animalIds.add(leavingIds.next());
+        }
+      }
+      occupancy.adjust(color, occupancy.barn(color, sourceBarnId), -leavingCount);
+    });
+    return animalIdsByTarget;
+  }
 
-    for (Barn emptyBarn : emptyBarns) {
-      barns.remove(emptyBarn);
-      barnRepository.delete(emptyBarn);
+  // apply a move plan with one bulk update per target barn, bypassing entity dirty-checking entirely
+  private void moveAnimals(Color color, Map<Long, List<Long>> animalIdsByTarget) {
+    BarnOccupancyIndex occupancy = occupancy(color);
+    animalIdsByTarget.forEach((targetBarnId, animalIds) -> {
+      Barn targetBarn = occupancy.barn(color, targetBarnId);
+      animalRepository.moveAnimalsToBarn(targetBarn, animalIds);
+      occupancy.adjust(color, targetBarn, animalIds.size());
+      farmJournal.record(animalIds.stream()
+          .map(animalId -> JournalRecord.animalMoved(color, animalId, targetBarnId))
+          .collect(Collectors.toList()));
+    });
+  }
+
+  // insert new animals into the barns the plan picked for them, flushing and detaching every flush-size inserts
+  private void houseArrivals(Color color, RebalancePlan plan, List<Animal> arrivals) {
+    BarnOccupancyIndex occupancy = occupancy(color);
+    int flushSize = farmProperties.getIngest().getFlushSize();
+    List<Animal> pendingArrivals = new ArrayList<>();
+    Iterator<Animal> arrivalIterator = arrivals.iterator();
+    List<JournalRecord> housed = new ArrayList<>();
+    for (BarnMove move : plan.getMoves()) {
+      if (move.isArrival()) {
+        Barn targetBarn = occupancy.barn(color, move.getTargetBarnId());
+        for (int i = 0; i < move.getAnimalCount(); i++) {
+          Animal arrival = animalRepository.save(arrivalIterator.next().setBarn(targetBarn));
+          if (farmJournal.isEnabled()) {
+            housed.add(JournalRecord.animalAdded(color, arrival.getId(), targetBarn.getId()));
+          }
+          if (flushSize > 0) {
+            pendingArrivals.add(arrival);
+            if (pendingArrivals.size() >= flushSize) {
+              // push the batched inserts out and let go of the arrivals written, the transaction may be the caller's
+              // so anything else it has loaded stays managed
+              flush(color);
+              pendingArrivals.forEach(entityManager::detach);
+              pendingArrivals.clear();
+            }
+          }
+        }
+        occupancy.adjust(color, targetBarn, move.getAnimalCount());
+      }
     }
+    farmJournal.record(housed);
+  }
+
+  // write out pending changes ahead of the commit, so that the time spent writing shows up as its own phase
+  private void flush(Color color) {
+    farmMetrics.timePhase(FarmMetrics.Phase.FLUSH, color, () -> entityManager.flush());
+  }
+
+  // load the occupancy of a single color, e.g. after it was invalidated by a rollback
+  private void ensureOccupancy(Color color) {
+    BarnOccupancyIndex occupancy = occupancy(color);
+    if (!occupancy.isLoaded(color)) {
+      farmMetrics.timePhase(FarmMetrics.Phase.RELOAD, color, () -> {
+        Map<Long, Integer> headCounts = headCounts(occupancyRepository.findHeadCounts(color));
+        // the cached barns of an optimistic color may predate a commit that moved its version on, so its writers
+        // go by the barns that have an occupancy row
+        List<Barn> barns = colorLockManager.isOptimistic(color)
+            ? barnRepository.findAllById(headCounts.keySet())
+            : barnRepository.findBarnsByColor(color);
+        occupancy.load(color, barns, headCounts);
+      });
+    }
+  }
+
+  // the shared occupancy for colors that are locked, a copy private to the transaction for optimistic colors,
+  // read as of the transaction's start and thrown away with it
+  private BarnOccupancyIndex occupancy(Color color) {
+    if (!colorLockManager.isOptimistic(color)) {
+      return occupancyIndex;
+    }
+    BarnOccupancyIndex occupancy = (BarnOccupancyIndex) TransactionSynchronizationManager.getResource(
+        privateOccupancyKey);
+    if (occupancy == null) {
+      BarnOccupancyIndex privateOccupancy = new BarnOccupancyIndex();
+      TransactionSynchronizationManager.bindResource(privateOccupancyKey, privateOccupancy);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResource(privateOccupancyKey);
+        }
+      });
+      occupancy = privateOccupancy;
+    }
+    return occupancy;
+  }
+
+  // run the work of a single color, in the caller's transaction if there is one, and otherwise in a transaction of
+  // its own on the color's shard, retried on conflict for an optimistic color
+  private <T> T writeColor(Color color, List<Animal> arrivals, Supplier<T> work) {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      // the caller owns the transaction, so a conflict on an optimistic color fails it rather than being retried
+      colorShards.checkShard(color);
+      return work.get();
+    }
+    return inColorTransaction(color, arrivals, work);
+  }
+
+  private void writeColor(Color color, List<Animal> arrivals, Runnable work) {
+    writeColor(color, arrivals, () -> {
+      work.run();
+      return null;
+    });
+  }
+
+  private <T> T inColorTransaction(Color color, List<Animal> arrivals, Supplier<T> work) {
+    if (!colorLockManager.isOptimistic(color)) {
+      return colorShards.onShardOf(color, () -> colorTransaction.execute(status -> work.get()));
+    }
+    return colorShards.onShardOf(color, () -> colorLockManager.retryOnConflict(color, () -> {
+      try {
+        return colorTransaction.execute(status -> work.get());
+      }
+      catch (RuntimeException e) {
+        // the arrivals were given ids and barns by the attempt that was rolled back, the next one starts them over
+        arrivals.forEach(arrival -> {
+          new DirectFieldAccessor(arrival).setPropertyValue("id", null);
+          arrival.setBarn(null);
+        });
+        throw e;
+      }
+    }));
+  }
+
+  // head counts keyed by barn id
+  private static Map<Long, Integer> headCounts(List<BarnHeadCount> headCounts) {
+    return headCounts.stream()
+            .collect(Collectors.toMap(BarnHeadCount::getBarnId, headCount -> headCount.getHeadCount().intValue()));
+  }
+
+  // lock a color until commit, the index and the cached barns are updated ahead of the commit, so a failed
+  // transaction forgets the color before the lock goes to the next writer
+  private void lockColor(Color color) {
+    colorLockManager.lock(color, () -> {
+      occupancyIndex.invalidate(color);
+      barnRepository.evictBarnsByColor(color);
+    });
+  }
+
+  // read a query page by page, each page starting after the last id of the previous one
+  private <T> Stream<T> keysetStream(BiFunction<Long, Pageable, List<T>> query, Function<T, Long> idOf) {
+    int pageSize = farmProperties.getRead().getPageSize();
+    Iterator<List<T>> pages = new Iterator<List<T>>() {
+
+      private Long lastId = 0L;
+
+      private List<T> page;
+
+      private boolean exhausted;
+
+      @Override
+      public boolean hasNext() {
+        if (page == null && !exhausted) {
+          List<T> next = query.apply(lastId, PageRequest.of(0, pageSize));
+          // a short page is the last one, there is no need to ask for another
+          exhausted = next.size() < pageSize;
+          if (!next.isEmpty()) {
+            lastId = idOf.apply(next.get(next.size() - 1));
+            page = next;
+          }
+        }
+        return page != null;
+      }
+
+      @Override
+      public List<T> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        List<T> next = page;
+        page = null;
+        return next;
+      }
+
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false)
+        .flatMap(List::stream);
   }
 
   @Autowired
-  public AnimalServiceImpl(AnimalRepository animalRepository, BarnRepository barnRepository) {
+  public AnimalServiceImpl(AnimalRepository animalRepository, BarnRepository barnRepository,
+                           BarnOccupancyRepository occupancyRepository, BarnOccupancyIndex occupancyIndex,
+                           FarmProperties farmProperties,
+                           ColorLockManager colorLockManager, FarmMetrics farmMetrics, FarmJournal farmJournal,
+                           FarmConsolidator farmConsolidator, StripeBalancer stripeBalancer, ColorShards colorShards,
+                           @Qualifier("ingestExecutor") ThreadPoolTaskExecutor ingestExecutor,
+                           PlatformTransactionManager transactionManager) {
     this.animalRepository = animalRepository;
     this.barnRepository = barnRepository;
+    this.occupancyRepository = occupancyRepository;
+    this.occupancyIndex = occupancyIndex;
+    this.farmProperties = farmProperties;
+    this.colorLockManager = colorLockManager;
+    this.farmMetrics = farmMetrics;
+    this.farmJournal = farmJournal;
+    this.farmConsolidator = farmConsolidator;
+    this.stripeBalancer = stripeBalancer;
+    this.colorShards = colorShards;
+    this.ingestExecutor = ingestExecutor;
+    this.colorTransaction = new TransactionTemplate(transactionManager);
+    this.colorTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.pageTransaction = new TransactionTemplate(transactionManager);
+    this.pageTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.pageTransaction.setReadOnly(true);
   }
 
+  /**
+   * <p>
+   * Load the barn occupancy of every color from the barn_occupancy table, so that the common add
+   * can be placed without reading any animals.
+   * </p>
+   */
+  @PostConstruct
+  public void loadOccupancy() {
+    Map<Long, Integer> headCounts = new HashMap<>();
+    colorShards.fanOut(shard -> headCounts(occupancyRepository.findHeadCounts())).forEach(headCounts::putAll);
+    Map<Color, List<Barn>> barnsByColor = colorShards.<List<Barn>>fanOut(shard -> barnRepository.findAll()).stream()
+            .flatMap(List::stream)
+            .collect(Collectors.groupingBy(Barn::getColor));
+    for (Color color : Color.values()) {
+      occupancyIndex.load(color, barnsByColor.getOrDefault(color, Collections.emptyList()), headCounts);
+    }
+  }
+
+  // every shard is read in a transaction of its own, all of them at once
   @Override
-  @Transactional(readOnly = true)
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public List<Animal> findAll() {
-    return animalRepository.findAll();
+    return colorShards.<List<Animal>>fanOut(shard -> animalRepository.findAll()).stream()
+        .flatMap(List::stream)
+        .collect(Collectors.toList());
   }
 
   @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Stream<Animal> streamAll() {
+    return shardedKeysetStream(animalRepository::findAnimalsAfter, Animal::getId);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Stream<AnimalSummary> streamAllSummaries() {
+    return shardedKeysetStream(animalRepository::findAnimalSummariesAfter, AnimalSummary::getId);
+  }
+
+  // ids are unique across shards but not laid out by shard, so every shard is read in id order and the shards are
+  // merged by id, a page is read on its shard and then closed along with its transaction
+  private <T> Stream<T> shardedKeysetStream(BiFunction<Long, Pageable, List<T>> query, Function<T, Long> idOf) {
+    List<Stream<T>> shardStreams = IntStream.range(0, colorShards.getShardCount())
+        .mapToObj(shard -> keysetStream((afterId, pageable) ->
+            colorShards.onShard(shard, () -> pageTransaction.execute(status -> query.apply(afterId, pageable))), idOf))
+        .collect(Collectors.toList());
+    return shardStreams.size() == 1 ? shardStreams.get(0) : mergeById(shardStreams, idOf);
+  }
+
+  // merge streams that are each in id order into one, a stream is only read on once its current head is taken
+  private static <T> Stream<T> mergeById(List<Stream<T>> streams, Function<T, Long> idOf) {
+    List<Iterator<T>> sources = streams.stream().map(Stream::iterator).collect(Collectors.toList());
+    List<T> heads = new ArrayList<>(Collections.nCopies(sources.size(), null));
+    PriorityQueue<Integer> sourcesByHead = new PriorityQueue<>(
+        Comparator.comparing((Integer source) -> idOf.apply(heads.get(source))));
+    Iterator<T> merged = new Iterator<T>() {
+
+      private boolean started;
+
+      @Override
+      public boolean hasNext() {
+        if (!started) {
+          started = true;
+          IntStream.range(0, sources.size()).forEach(this::advance);
+        }
+        return !sourcesByHead.isEmpty();
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int source = sourcesByHead.poll();
+        T next = heads.get(source);
+        advance(source);
+        return next;
+      }
+
+      private void advance(int source) {
+        if (sources.get(source).hasNext()) {
+          heads.set(source, sources.get(source).next());
+          sourcesByHead.add(source);
+        }
+      }
+
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
   public void deleteAll() {
-    animalRepository.deleteAll();
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      if (colorShards.isSharded()) {
+        throw new IllegalStateException("A sharded farm can't be cleared from within a transaction.");
+      }
+      clearShard();
+    }
+    else {
+      colorShards.fanOut(() -> colorTransaction.execute(status -> {
+        clearShard();
+        return null;
+      }));
+    }
+    occupancyIndex.clear();
+  }
+
+  // delete the animals of the current shard and zero its barns' occupancy
+  private void clearShard() {
+    animalRepository.deleteAllInBatch();
+    occupancyRepository.resetHeadCounts();
+    farmJournal.record(JournalRecord.animalsCleared());
   }
 
   @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
   public Animal addToFarm(Animal animal) {
+    Color color = animal.getFavoriteColor();
+    List<Animal> arrivals = Collections.singletonList(animal);
+    // a stripe is only taken in a transaction of its own, a caller's transaction may go on to lock the whole color
+    if (colorLockManager.isStriped(color) && !TransactionSynchronizationManager.isActualTransactionActive()) {
+      return farmMetrics.timeOperation("add", color,
+          () -> inColorTransaction(color, arrivals, () -> addToStripe(animal)));
+    }
+    return farmMetrics.timeOperation("add", color, () -> writeColor(color, arrivals, () -> addAnimal(animal)));
+  }
 
-    // retrieve new BarnOrganizer from context
-    BarnOrganizer barnOrganizer = applicationContext.getBean(BarnOrganizer.class);
+  // house a single animal of a striped color in the emptiest barn of a stripe with room, locking only that stripe
+  private Animal addToStripe(Animal animal) {
+
+    Color color = animal.getFavoriteColor();
+    int stripes = colorLockManager.stripeCount(color);
+    // the other stripes keep being written, so a rollback takes back its own head count instead of dropping the
+    // whole color, registered ahead of the stripe's lock so that it runs while the stripe is still held
+    AtomicReference<Barn> housedIn = new AtomicReference<>();
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCompletion(int status) {
+        if (status != TransactionSynchronization.STATUS_COMMITTED && housedIn.get() != null
+            && occupancyIndex.isLoaded(color)) {
+          occupancyIndex.adjust(color, housedIn.get(), -1);
+        }
+      }
+    });
+
+    // stripes in the order of their emptiest barn, a color that isn't loaded has to be loaded under the whole lock
+    List<Integer> stripeOrder = !occupancyIndex.isLoaded(color) ? Collections.emptyList()
+        : occupancyIndex.leastPopulatedBarns(color, stripes).stream()
+            .map(barn -> BarnOccupancyIndex.stripeOf(barn.getId(), stripes))
+            .collect(Collectors.toList());
+    int stripe = colorLockManager.lockStripe(color, stripeOrder,
+        candidate -> roomInStripe(color, stripes, candidate).isPresent());
+    if (stripe < 0) {
+      // every stripe is full, so a new barn is needed and the color is reorganized as a whole
+      return addAnimal(animal);
+    }
+
+    Barn barn = roomInStripe(color, stripes, stripe).get();
+    animal.setBarn(barn);
+    animalRepository.save(animal);
+    occupancyIndex.adjust(color, barn, 1);
+    housedIn.set(barn);
+    farmJournal.record(JournalRecord.animalAdded(color, animal.getId(), barn.getId()));
+    recountOccupancy(Collections.singleton(barn.getId()));
+    flush(color);
+    stripeBalancer.written(color);
+    return animal;
 
-    // retrieve lock for animals color to prevent updates to related barns
-    Lock lock = colorLock.computeIfAbsent(animal.getFavoriteColor(), l -> new ReentrantLock());
-    lock.lock();
+  }
 
-    try {
-      // get all animals with the same color / barn
-      List<Animal> animalsMatchingColor = animalRepository.findAnimalsByFavoriteColor(animal.getFavoriteColor());
-      // organize animals by barn ID
-      Map<Barn, List<Animal>> barnedAnimals = animalsMatchingColor.stream().collect(Collectors.groupingBy(Animal::getBarn));
-      // find a barn with availability
-      Barn availableBarn = findOrCreateBarnWithAvailability(barnedAnimals, animal.getFavoriteColor());
-      // add new animal to the barn
-      barnedAnimals.getOrDefault(availableBarn, new ArrayList<>()).add(animal);
-      animal.setBarn(availableBarn);
-      animalRepository.save(animal);
-      // organize / rebalance the barns for this color, since we've modified it
-      List<Animal> updatedAnimals = barnOrganizer.organizeAnimals(barnedAnimals);
-      // update any animals that were modified during the reorganization
-      animalRepository.saveAll(updatedAnimals);
+  // the emptiest barn of a stripe, if it has room left
+  private Optional<Barn> roomInStripe(Color color, int stripes, int stripe) {
+    if (!occupancyIndex.isLoaded(color)) {
+      return Optional.empty();
     }
-    finally {
-      // ensure we release the lock
-      lock.unlock();
+    return occupancyIndex.leastPopulatedBarn(color, stripes, stripe)
+        .filter(barn -> occupancyIndex.headCount(color, barn.getId()) < FarmUtils.barnCapacity());
+  }
+
+  // house a single animal, in the emptiest barn when there is room
+  private Animal addAnimal(Animal animal) {
+
+    // take the lock for the animal's color to prevent updates to related barns, it is held until commit
+    lockColor(animal.getFavoriteColor());
+    ensureOccupancy(animal.getFavoriteColor());
+
+    // barns are kept balanced, so if the emptiest barn has room the animal can simply move in
+    BarnOccupancyIndex occupancy = occupancy(animal.getFavoriteColor());
+    Optional<Barn> emptiestBarn = occupancy.leastPopulatedBarn(animal.getFavoriteColor());
+    if (emptiestBarn.isPresent()
+        && occupancy.headCount(animal.getFavoriteColor(), emptiestBarn.get().getId()) < FarmUtils.barnCapacity()) {
+      animal.setBarn(emptiestBarn.get());
+      animalRepository.save(animal);
+      occupancy.adjust(animal.getFavoriteColor(), emptiestBarn.get(), 1);
+      farmJournal.record(JournalRecord.animalAdded(animal.getFavoriteColor(), animal.getId(),
+          emptiestBarn.get().getId()));
+      recountOccupancy(Collections.singleton(emptiestBarn.get().getId()));
+      flush(animal.getFavoriteColor());
+      return animal;
     }
 
+    // every barn is full, so a new barn is built and the color is reorganized around it
+    rebalance(animal.getFavoriteColor(), Collections.singletonList(animal), Collections.emptyList());
+
     return animal;
 
   }
 
   @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
   public void addToFarm(List<Animal> animals) {
 
-    // retrieve new BarnOrganizer from context
-    BarnOrganizer barnOrganizer = applicationContext.getBean(BarnOrganizer.class);
+    // group given animals by color, in color order so concurrent batches always lock colors in the same order
+    Map<Color, List<Animal>> animalsByColor = animals.stream().collect(Collectors.groupingBy(Animal::getFavoriteColor,
+        () -> new EnumMap<>(Color.class), Collectors.toList()));
 
-    // group given animals by color
-    Map<Color, List<Animal>> animalsByColor = animals.stream().collect(Collectors.groupingBy(Animal::getFavoriteColor));
+    animalsByColor.forEach((color, colorAnimals) -> farmMetrics.timeOperation("add.batch", color,
+        () -> writeColor(color, colorAnimals, () -> updateColor(color, colorAnimals, Collections.emptyList()))));
+  }
 
-    for (Map.Entry<Color, List<Animal>> colorSet : animalsByColor.entrySet()) {
-      // retrieve lock for current color to prevent updates to related barns
-      Lock lock = colorLock.computeIfAbsent(colorSet.getKey(), l -> new ReentrantLock());
-      lock.lock();
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public List<IngestResult> ingestToFarm(List<Animal> animals) {
 
-      try {
-        // get all animals with the same color
-        List<Animal> animalsMatchingColor = animalRepository.findAnimalsByFavoriteColor(colorSet.getKey());
-        // store the barns in a set for later reuse
-        Set<Barn> existingBarns = animalsMatchingColor.stream().map(Animal::getBarn).collect(Collectors.toSet());
-        // add the new animals to the existing list
-        animalsMatchingColor.addAll(colorSet.getValue());
-        // organize the animals so that they're ready to be added to barns and persisted
-        List<List<Animal>> organizedAnimals = barnOrganizer.initializeAnimals(animalsMatchingColor);
-
-        Iterator<Barn> barnIterator = existingBarns.iterator();
-        for (List<Animal> barnOfAnimals : organizedAnimals) {
-          // get existing or create new barn
-          Barn addToBarn = barnIterator.hasNext() ? barnIterator.next() : createNewBarn(colorSet.getKey());
-          // add animals to the barn
-          barnOfAnimals.forEach(animal -> animal.setBarn(addToBarn));
-          // persist the animals
-          animalRepository.saveAll(barnOfAnimals);
-        }
-        // delete any remaining barns
-        while (barnIterator.hasNext()) {
-          barnRepository.delete(barnIterator.next());
-        }
-      }
-      finally {
-        // ensure we release the lock
-        lock.unlock();
+    // group given animals by color, in color order
+    Map<Color, List<Animal>> animalsByColor = animals.stream().collect(Collectors.groupingBy(Animal::getFavoriteColor,
+        () -> new EnumMap<>(Color.class), Collectors.toList()));
+
+    // colors never share barns, so each one is handed to its own worker
+    List<Future<IngestResult>> pendingResults = new ArrayList<>();
+    animalsByColor.forEach((color, colorAnimals) ->
+        pendingResults.add(ingestExecutor.submit(() -> ingestColor(color, colorAnimals))));
+
+    List<IngestResult> results = new ArrayList<>();
+    try {
+      for (Future<IngestResult> pendingResult : pendingResults) {
+        results.add(pendingResult.get());
       }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the ingest to finish.", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("Ingest worker failed unexpectedly.", e.getCause());
+    }
+    return results;
+
+  }
 
+  // apply the arrivals and departures of a single color with one reorganization and report the barns built
+  private int updateColor(Color color, List<Animal> arrivals, List<Long> departureIds) {
+
+    // take the lock for the current color to prevent updates to related barns, it is held until commit
+    lockColor(color);
+    ensureOccupancy(color);
+
+    BarnOccupancyIndex occupancy = occupancy(color);
+    int barnCount = occupancy.barnCount(color);
+    List<Long> departureBarnIds = new ArrayList<>();
+    if (!departureIds.isEmpty()) {
+      // read the barn of each departure before they go, so the index only changes where animals actually left
+      List<AnimalSummary> departures = animalRepository.findAnimalSummaries(color, departureIds);
+      Map<Long, Long> departuresByBarn = departures.stream()
+          .collect(Collectors.groupingBy(AnimalSummary::getBarnId, Collectors.counting()));
+      departuresByBarn.forEach((barnId, departureCount) ->
+          occupancy.adjust(color, occupancy.barn(color, barnId), -departureCount.intValue()));
+      departureBarnIds.addAll(departuresByBarn.keySet());
+      farmJournal.record(departures.stream()
+          .map(departure -> JournalRecord.animalRemoved(color, departure.getId(), departure.getBarnId()))
+          .collect(Collectors.toList()));
+      // remove every departing animal of this color with a single statement, emptied barns stay so they get drained
+      animalRepository.deleteAnimalsByIds(color, departureIds);
+    }
+    if (arrivals.isEmpty() && farmConsolidator.isDeferred()) {
+      // nothing can go over capacity by leaving, so the barns are left as they are until the color is consolidated
+      leaveUnconsolidated(color, departureBarnIds, departureIds.size());
+      return 0;
+    }
+    // organize the whole group with a single planning pass, existing animals only move when the barn count changes
+    rebalance(color, arrivals, departureBarnIds);
+    return occupancy.barnCount(color) - barnCount;
+
+  }
+
+  // ingest a single color in its own transaction, reporting rather than throwing any failure
+  private IngestResult ingestColor(Color color, List<Animal> animals) {
+    long start = System.currentTimeMillis();
+    try {
+      Integer barnsCreated = farmMetrics.timeOperation("ingest", color, () -> inColorTransaction(color, animals,
+          () -> updateColor(color, animals, Collections.emptyList())));
+      return IngestResult.succeeded(color, animals.size(), barnsCreated, System.currentTimeMillis() - start);
+    }
+    catch (RuntimeException e) {
+      return IngestResult.failed(color, animals.size(), System.currentTimeMillis() - start, e);
     }
   }
 
   @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
   public void removeFromFarm(Animal animal) {
+    farmMetrics.timeOperation("remove", animal.getFavoriteColor(), () -> writeColor(animal.getFavoriteColor(),
+        Collections.emptyList(), () -> removeAnimal(animal)));
+  }
 
-    // retrieve new BarnOrganizer from context
-    BarnOrganizer barnOrganizer = applicationContext.getBean(BarnOrganizer.class);
+  // remove a single animal and reorganize what is left of its color
+  private void removeAnimal(Animal animal) {
 
-    // retrieve lock for animals color to prevent updates to related barns
-    Lock lock = colorLock.computeIfAbsent(animal.getFavoriteColor(), l -> new ReentrantLock());
-    lock.lock();
+    // take the lock for the animal's color to prevent updates to related barns, it is held until commit
+    lockColor(animal.getFavoriteColor());
+    ensureOccupancy(animal.getFavoriteColor());
 
-    try {
-      // remove animal from repository
-      animalRepository.delete(animal);
-      // get all animals with the same color / barn
-      List<Animal> animalsMatchingColor = animalRepository.findAnimalsByFavoriteColor(animal.getFavoriteColor());
-      // organize animals by barn ID
-      Map<Barn, List<Animal>> barnedAnimals = animalsMatchingColor.stream().collect(Collectors.groupingBy(Animal::getBarn));
-      // organize / rebalance the barns for this color, since we've modified it
-      List<Animal> updatedAnimals = barnOrganizer.organizeAnimals(barnedAnimals);
-      // update any animals that were modified during the reorganization
-      animalRepository.saveAll(updatedAnimals);
-      // delete any empty barns
-      cleanupEmptyBarns(barnedAnimals);
+    // the caller's copy may predate a reorganization, so read the animal's barn again now that the color is locked
+    Optional<Animal> housedAnimal = animalRepository.findById(animal.getId());
+    if (!housedAnimal.isPresent()) {
+      // already gone, just like a bulk removal there is nothing left to do
+      return;
     }
-    finally {
-      // ensure we release the lock
-      lock.unlock();
+
+    Barn barn = housedAnimal.get().getBarn();
+    // remove animal from repository
+    animalRepository.delete(housedAnimal.get());
+    occupancy(animal.getFavoriteColor()).adjust(animal.getFavoriteColor(), barn, -1);
+    farmJournal.record(JournalRecord.animalRemoved(animal.getFavoriteColor(), animal.getId(), barn.getId()));
+    if (farmConsolidator.isDeferred()) {
+      leaveUnconsolidated(animal.getFavoriteColor(), Collections.singleton(barn.getId()), 1);
+      return;
     }
+    // organize / rebalance the barns for this color, since we've modified it
+    rebalance(animal.getFavoriteColor(), Collections.emptyList(), Collections.singleton(barn.getId()));
 
   }
 
   @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
   public void removeFromFarm(List<Animal> animals) {
-    animals.forEach(animal -> removeFromFarm(animalRepository.getOne(animal.getId())));
+
+    // group given animal ids by color, in color order so concurrent batches always lock colors in the same order
+    Map<Color, List<Long>> animalIdsByColor = animals.stream().collect(Collectors.groupingBy(Animal::getFavoriteColor,
+        () -> new EnumMap<>(Color.class), Collectors.mapping(Animal::getId, Collectors.toList())));
+
+    animalIdsByColor.forEach((color, animalIds) -> farmMetrics.timeOperation("remove.batch", color,
+        () -> writeColor(color, Collections.emptyList(),
+            () -> updateColor(color, Collections.emptyList(), animalIds))));
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public void consolidate(Color color) {
+    farmMetrics.timeOperation("consolidate", color,
+        () -> writeColor(color, Collections.emptyList(), () -> consolidateColor(color)));
+  }
+
+  // rebalance a color as it stands, draining the barns its removals have left too empty
+  private void consolidateColor(Color color) {
+    lockColor(color);
+    ensureOccupancy(color);
+    rebalance(color, Collections.emptyList(), Collections.emptyList());
+    farmConsolidator.consolidated(color);
+  }
+
+  // keep the occupancy of the barns animals left in step and have the color consolidated later on
+  private void leaveUnconsolidated(Color color, Collection<Long> departureBarnIds, int departureCount) {
+    recountOccupancy(departureBarnIds);
+    flush(color);
+    farmConsolidator.changed(color, departureCount);
   }
+
+  @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public void updateFarm(Color color, List<Animal> arrivals, List<Animal> departures) {
+    List<Long> departureIds = departures.stream().map(Animal::getId).collect(Collectors.toList());
+    farmMetrics.timeOperation("update", color,
+        () -> writeColor(color, arrivals, () -> updateColor(color, arrivals, departureIds)));
+  }
+
 }
@@ -0,0 +1,30 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Animal;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of {@link AnimalService} for bursty traffic. Every color has a single writer that drains the
+ * requests queued for that color in batches, applying a whole batch in one transaction with one reorganization of
+ * the color's barns. The same rules apply as for the synchronous service.
+ */
+public interface AsyncAnimalService {
+
+  /**
+   * Queue an animal moving to the farm.
+   *
+   * @param animal the new addition to the farm, with a name and favorite color, but no barn
+   * @return completed with the persisted animal once the batch it was applied in has committed
+   */
+  CompletableFuture<Animal> addToFarm(Animal animal);
+
+  /**
+   * Queue an animal moving to another farm.
+   *
+   * @param animal the sad friend who is moving away
+   * @return completed with the removed animal once the batch it was applied in has committed
+   */
+  CompletableFuture<Animal> removeFromFarm(Animal animal);
+
+}
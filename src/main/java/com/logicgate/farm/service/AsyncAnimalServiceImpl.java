@@ -0,0 +1,155 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class AsyncAnimalServiceImpl implements AsyncAnimalService {
+
+  // one mailbox per color, each with at most one writer draining it
+  private final Map<Color, Mailbox> mailboxes = new EnumMap<>(Color.class);
+
+  private final AnimalService animalService;
+
+  private final FarmProperties farmProperties;
+
+  private final ThreadPoolTaskExecutor mailboxExecutor;
+
+  @Autowired
+  public AsyncAnimalServiceImpl(AnimalService animalService, FarmProperties farmProperties,
+                                @Qualifier("mailboxExecutor") ThreadPoolTaskExecutor mailboxExecutor) {
+    this.animalService = animalService;
+    this.farmProperties = farmProperties;
+    this.mailboxExecutor = mailboxExecutor;
+    for (Color color : Color.values()) {
+      mailboxes.put(color, new Mailbox(color));
+    }
+  }
+
+  @Override
+  public CompletableFuture<Animal> addToFarm(Animal animal) {
+    return mailboxes.get(animal.getFavoriteColor()).post(animal, true);
+  }
+
+  @Override
+  public CompletableFuture<Animal> removeFromFarm(Animal animal) {
+    return mailboxes.get(animal.getFavoriteColor()).post(animal, false);
+  }
+
+  // a queued add or remove and the future its caller is waiting on
+  private static final class Request {
+
+    private final Animal animal;
+
+    private final boolean arrival;
+
+    private final CompletableFuture<Animal> result = new CompletableFuture<>();
+
+    Request(Animal animal, boolean arrival) {
+      this.animal = animal;
+      this.arrival = arrival;
+    }
+
+  }
+
+  private final class Mailbox {
+
+    private final Color color;
+
+    private final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+
+    // set while a writer is scheduled or running for this color
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    Mailbox(Color color) {
+      this.color = color;
+    }
+
+    CompletableFuture<Animal> post(Animal animal, boolean arrival) {
+      Request request = new Request(animal, arrival);
+      requests.add(request);
+      schedule();
+      return request.result;
+    }
+
+    private void schedule() {
+      if (!requests.isEmpty() && scheduled.compareAndSet(false, true)) {
+        mailboxExecutor.execute(this::drain);
+      }
+    }
+
+    // apply everything queued so far in batches, then hand the color back
+    private void drain() {
+      try {
+        List<Request> batch = nextBatch();
+        while (!batch.isEmpty()) {
+          apply(batch);
+          batch = nextBatch();
+        }
+      }
+      finally {
+        scheduled.set(false);
+        // a request may have been posted after the last poll, but before the flag was cleared
+        schedule();
+      }
+    }
+
+    private List<Request> nextBatch() {
+      List<Request> batch = new ArrayList<>();
+      Request request;
+      while (batch.size() < farmProperties.getMailbox().getBatchSize() && (request = requests.poll()) != null) {
+        batch.add(request);
+      }
+      return batch;
+    }
+
+    private void apply(List<Request> batch) {
+      List<Animal> arrivals = new ArrayList<>();
+      List<Animal> departures = new ArrayList<>();
+      batch.forEach(request -> (request.arrival ? arrivals : departures).add(request.animal));
+      try {
+        // one transaction and one reorganization for the whole batch, callers hear back only after the commit
+        animalService.updateFarm(color, arrivals, departures);
+        batch.forEach(request -> request.result.complete(request.animal));
+      }
+      catch (RuntimeException e) {
+        if (batch.size() == 1) {
+          batch.get(0).result.completeExceptionally(e);
+          return;
+        }
+        // the whole batch was rolled back, each request gets a transaction of its own so a bad one fails only itself
+        arrivals.forEach(AsyncAnimalServiceImpl::startOver);
+        batch.forEach(request -> apply(Collections.singletonList(request)));
+      }
+      catch (Throwable e) {
+        // no caller is left waiting, whatever went wrong
+        batch.forEach(request -> request.result.completeExceptionally(e));
+        throw e;
+      }
+    }
+
+  }
+
+  // an arrival given an id and a barn by a rolled back transaction goes back to how its caller handed it in
+  private static void startOver(Animal arrival) {
+    new DirectFieldAccessor(arrival).setPropertyValue("id", null);
+    arrival.setBarn(null);
+  }
+
+}
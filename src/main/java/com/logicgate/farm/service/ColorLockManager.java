@@ -0,0 +1,442 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.domain.ColorPartition;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.repository.ColorPartitionRepository;
+import com.logicgate.farm.util.BarnOccupancyIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Serializes writers of a color.  A lock is always taken inside a transaction and is only released once that
+ * transaction has completed, so the next writer can never read barns that are still being committed.
+ * </p>
+ *
+ * <p>
+ * In LOCAL mode writers are serialized within this JVM only.  In DATABASE mode the color's partition row is also
+ * locked with a select ... for update, which serializes writers across every node sharing the database.  The
+ * partition's layout version is bumped by every writer, and a node that finds a version it didn't write itself
+ * drops its occupancy and cached barns for the color so that they get reloaded from the database.
+ * </p>
+ *
+ * <p>
+ * Colors configured as optimistic are not locked by their writers.  A writer of such a color reads the partition's
+ * layout version up front and moves it on just before it commits, which fails if another writer committed the color
+ * in the meantime.  The losing transaction rolls back and is started over by
+ * {@link #retryOnConflict(Color, Supplier)}, so cold colors avoid the lock round trip while hot colors keep queueing
+ * instead of wasting work on retries.  Work on the whole farm, like a snapshot, locks their partition rows through
+ * {@link #lockExclusively(Color, boolean)} instead, which keeps their writers from committing until it is done.
+ * </p>
+ *
+ * <p>
+ * Colors configured with stripes split their barns into lock stripes by barn id.  A single add only locks the stripe
+ * it goes into through {@link #lockStripe(Color, List, IntPredicate)}, so adds to different stripes run side by
+ * side, while every other write still locks the color as a whole and waits for the stripe writers to finish.
+ * Stripes only exist within this JVM, so they can't be combined with DATABASE mode or an optimistic color.
+ * </p>
+ */
+@Component
+public class ColorLockManager {
+
+  // H2's "concurrent update" error, raised when a row changed under a transaction that went on to update it
+  private static final int H2_CONCURRENT_UPDATE = 90131;
+
+  // stores locks by color to avoid excessive waiting
+  private final ConcurrentHashMap<Color, ReentrantLock> colorLock = new ConcurrentHashMap<>();
+
+  // striped colors only, held shared by the writers of a single stripe and exclusively by writers of the whole color
+  private final Map<Color, ReentrantReadWriteLock> stripeGates = new EnumMap<>(Color.class);
+
+  // striped colors only, the lock of each stripe, a stripe holding the barns dealt to it by id
+  private final Map<Color, ReentrantLock[]> stripeLocks = new EnumMap<>(Color.class);
+
+  // the layout version of each color as last committed by this node
+  private final ConcurrentHashMap<Color, Long> knownVersions = new ConcurrentHashMap<>();
+
+  private final ColorPartitionRepository partitionRepository;
+
+  private final BarnRepository barnRepository;
+
+  private final BarnOccupancyIndex occupancyIndex;
+
+  private final FarmProperties farmProperties;
+
+  private final FarmMetrics farmMetrics;
+
+  private final ColorShards colorShards;
+
+  private final TransactionTemplate partitionTransaction;
+
+  // transaction resource key of the optimistic colors a transaction has read the version of
+  private final Object checkedColorsKey = new Object();
+
+  @Autowired
+  public ColorLockManager(ColorPartitionRepository partitionRepository, BarnRepository barnRepository,
+                          BarnOccupancyIndex occupancyIndex, FarmProperties farmProperties, FarmMetrics farmMetrics,
+                          ColorShards colorShards, PlatformTransactionManager transactionManager) {
+    this.partitionRepository = partitionRepository;
+    this.barnRepository = barnRepository;
+    this.occupancyIndex = occupancyIndex;
+    this.farmProperties = farmProperties;
+    this.farmMetrics = farmMetrics;
+    this.colorShards = colorShards;
+    this.partitionTransaction = new TransactionTemplate(transactionManager);
+    this.partitionTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    // every color gets its lock up front, so that its queue can be watched before anyone contends for it
+    for (Color color : Color.values()) {
+      ReentrantLock lock = new ReentrantLock();
+      colorLock.put(color, lock);
+      farmMetrics.gaugeLockQueue(color, lock);
+    }
+    farmProperties.getLocking().getStripes().forEach((color, stripes) -> {
+      if (stripes > 1) {
+        if (isOptimistic(color) || farmProperties.getLocking().getMode() == FarmProperties.LockMode.DATABASE) {
+          throw new IllegalStateException(String.format(
+              "%s can't be striped, stripes only apply to colors locked within a single node.", color.name()));
+        }
+        ReentrantLock[] locks = new ReentrantLock[stripes];
+        for (int stripe = 0; stripe < stripes; stripe++) {
+          locks[stripe] = new ReentrantLock();
+        }
+        stripeGates.put(color, new ReentrantReadWriteLock());
+        stripeLocks.put(color, locks);
+      }
+    });
+  }
+
+  /**
+   * <p>
+   * Make sure every color has a partition row, on the color's shard.  Several nodes may start at once, so a row that
+   * another node inserted first is simply skipped.
+   * </p>
+   */
+  @PostConstruct
+  public void createPartitions() {
+    FarmProperties.Locking locking = farmProperties.getLocking();
+    if (locking.getMode() == FarmProperties.LockMode.DATABASE || !locking.getOptimisticColors().isEmpty()) {
+      for (Color color : Color.values()) {
+        try {
+          colorShards.onShardOf(color, () -> partitionTransaction.execute(status -> partitionRepository.findById(color)
+              .orElseGet(() -> partitionRepository.saveAndFlush(new ColorPartition(color)))));
+        }
+        catch (DataIntegrityViolationException e) {
+          // created by another node in the meantime
+        }
+      }
+    }
+  }
+
+  public boolean isOptimistic(Color color) {
+    return farmProperties.getLocking().getOptimisticColors().contains(color);
+  }
+
+  public boolean isStriped(Color color) {
+    return stripeLocks.containsKey(color);
+  }
+
+  public int stripeCount(Color color) {
+    ReentrantLock[] locks = stripeLocks.get(color);
+    return locks == null ? 1 : locks.length;
+  }
+
+  /**
+   * <p>
+   * Lock a color for the rest of the current transaction.  An optimistic color is not locked, the transaction fails
+   * on commit instead if another writer committed the color first.
+   * </p>
+   * @param color the color about to be changed
+   */
+  public void lock(Color color) {
+    lock(color, () -> { });
+  }
+
+  /**
+   * <p>
+   * Lock a color for the rest of the current transaction, running the given work if the transaction doesn't commit.
+   * The work runs before the lock is released, so a writer that changed shared state ahead of the commit can take it
+   * back before the next writer of the color gets in.
+   * </p>
+   * @param color the color about to be changed
+   * @param onRollback undoes what the transaction changed outside of the database
+   */
+  public void lock(Color color, Runnable onRollback) {
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      throw new IllegalStateException(String.format("Lock for %s must be taken inside a transaction.", color.name()));
+    }
+
+    if (isOptimistic(color)) {
+      Set<Color> checkedColors = checkedColors();
+      if (!checkedColors.add(color)) {
+        // already written earlier in this transaction, which checks the version it read back then
+        return;
+      }
+      Long layoutVersion = partitionRepository.findLayoutVersion(color);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          if (partitionRepository.advanceLayoutVersion(color, layoutVersion) == 0) {
+            throw new OptimisticLockingFailureException(String.format(
+                "%s was changed by another writer since version %d.", color.name(), layoutVersion));
+          }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          if (status != STATUS_COMMITTED) {
+            onRollback.run();
+          }
+        }
+      });
+      return;
+    }
+
+    long start = System.nanoTime();
+    ReentrantLock lock = colorLock.get(color);
+    lock.lock();
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCompletion(int status) {
+        // ensure we release the lock, whatever the outcome, but only once a failed writer has cleaned up after itself
+        try {
+          if (status != STATUS_COMMITTED) {
+            onRollback.run();
+          }
+        }
+        finally {
+          lock.unlock();
+        }
+      }
+    });
+
+    ReentrantReadWriteLock stripeGate = stripeGates.get(color);
+    if (stripeGate != null) {
+      if (stripeGate.getReadHoldCount() > 0) {
+        // the shared hold can't be upgraded, waiting for the exclusive one would wait for this very transaction
+        throw new IllegalStateException(String.format(
+            "%s can't be locked as a whole by a transaction that already holds one of its stripes.", color.name()));
+      }
+      // waits for the writers of single stripes to finish, and keeps new ones out until this transaction completes
+      stripeGate.writeLock().lock();
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(int status) {
+          stripeGate.writeLock().unlock();
+        }
+      });
+    }
+
+    if (farmProperties.getLocking().getMode() == FarmProperties.LockMode.DATABASE) {
+      ColorPartition partition = partitionRepository.lockPartition(color);
+      farmMetrics.recordPhase(FarmMetrics.Phase.LOCK_WAIT, color, System.nanoTime() - start);
+      // another node has changed this color since this node last did, so neither its occupancy nor its cached
+      // barns can be trusted
+      if (!Objects.equals(knownVersions.get(color), partition.getLayoutVersion())) {
+        occupancyIndex.invalidate(color);
+        barnRepository.evictBarnsByColor(color);
+      }
+      Long layoutVersion = partition.incrementLayoutVersion().getLayoutVersion();
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          knownVersions.put(color, layoutVersion);
+        }
+      });
+    }
+    else {
+      farmMetrics.recordPhase(FarmMetrics.Phase.LOCK_WAIT, color, System.nanoTime() - start);
+    }
+
+  }
+
+  /**
+   * <p>
+   * Lock a color for the rest of the current transaction, optimistic colors included.  The partition row of an
+   * optimistic color is locked rather than checked on commit, so none of its writers can commit until the current
+   * transaction has completed.  Meant for work that reads or replaces the whole farm, like a snapshot.
+   * </p>
+   * @param color the color to hold
+   * @param changesColor whether the transaction changes the color, which makes optimistic writers that read it
+   *                     beforehand fail their version check and start over
+   */
+  public void lockExclusively(Color color, boolean changesColor) {
+    if (!isOptimistic(color)) {
+      lock(color);
+      return;
+    }
+    ColorPartition partition = partitionRepository.lockPartition(color);
+    if (changesColor) {
+      partition.incrementLayoutVersion();
+    }
+  }
+
+  /**
+   * <p>
+   * Lock a single stripe of a striped color for the rest of the current transaction, leaving the other stripes to
+   * other writers.  Stripes are tried in the given order and the first one that is free and has room is kept.  When
+   * every stripe with room is being written the writer queues up for them in the same order.
+   * </p>
+   * @param color the striped color about to be changed
+   * @param stripeOrder the stripes to try, the preferred one first
+   * @param hasRoom whether a stripe, once locked, can take the write
+   * @return the stripe locked, or -1 when no stripe has room and the color has to be locked as a whole instead
+   */
+  public int lockStripe(Color color, List<Integer> stripeOrder, IntPredicate hasRoom) {
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      throw new IllegalStateException(String.format("Lock for %s must be taken inside a transaction.", color.name()));
+    }
+
+    ReentrantReadWriteLock stripeGate = stripeGates.get(color);
+    if (stripeGate.isWriteLockedByCurrentThread()) {
+      // the transaction already holds the whole color
+      return -1;
+    }
+
+    long start = System.nanoTime();
+    stripeGate.readLock().lock();
+    ReentrantLock[] locks = stripeLocks.get(color);
+    List<Integer> busyStripes = new ArrayList<>();
+    for (int stripe : stripeOrder) {
+      if (!locks[stripe].tryLock()) {
+        busyStripes.add(stripe);
+      }
+      else if (hasRoom.test(stripe)) {
+        return keepStripe(color, stripe, start);
+      }
+      else {
+        locks[stripe].unlock();
+      }
+    }
+    for (int stripe : busyStripes) {
+      locks[stripe].lock();
+      if (hasRoom.test(stripe)) {
+        return keepStripe(color, stripe, start);
+      }
+      locks[stripe].unlock();
+    }
+
+    stripeGate.readLock().unlock();
+    farmMetrics.recordPhase(FarmMetrics.Phase.LOCK_WAIT, color, System.nanoTime() - start);
+    farmMetrics.stripeEscalated(color);
+    return -1;
+
+  }
+
+  // hold a locked stripe and the shared gate of its color until the transaction completes
+  private int keepStripe(Color color, int stripe, long start) {
+    ReentrantReadWriteLock stripeGate = stripeGates.get(color);
+    ReentrantLock lock = stripeLocks.get(color)[stripe];
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCompletion(int status) {
+        lock.unlock();
+        stripeGate.readLock().unlock();
+      }
+    });
+    farmMetrics.recordPhase(FarmMetrics.Phase.LOCK_WAIT, color, System.nanoTime() - start);
+    return stripe;
+  }
+
+  // the optimistic colors whose version the current transaction checks on commit
+  @SuppressWarnings("unchecked")
+  private Set<Color> checkedColors() {
+    Set<Color> checkedColors = (Set<Color>) TransactionSynchronizationManager.getResource(checkedColorsKey);
+    if (checkedColors == null) {
+      Set<Color> newCheckedColors = EnumSet.noneOf(Color.class);
+      TransactionSynchronizationManager.bindResource(checkedColorsKey, newCheckedColors);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResource(checkedColorsKey);
+        }
+      });
+      checkedColors = newCheckedColors;
+    }
+    return checkedColors;
+  }
+
+  /**
+   * <p>
+   * Run the write of an optimistic color, starting it over after a random backoff whenever it loses to another
+   * writer.  The work has to run in a transaction of its own, so that each attempt reads the color afresh.
+   * </p>
+   * @param color the color being written
+   * @param attempt a single attempt of the write, including its commit
+   * @return the result of the attempt that committed
+   */
+  public <T> T retryOnConflict(Color color, Supplier<T> attempt) {
+    FarmProperties.Locking locking = farmProperties.getLocking();
+    long backoffMillis = locking.getInitialBackoffMillis();
+    for (int attemptCount = 1; ; attemptCount++) {
+      try {
+        return attempt.get();
+      }
+      catch (RuntimeException e) {
+        if (!isConflict(e)) {
+          throw e;
+        }
+        farmMetrics.optimisticConflict(color);
+        if (attemptCount >= locking.getMaxAttempts()) {
+          farmMetrics.optimisticExhausted(color);
+          throw e;
+        }
+        backoff(backoffMillis, e);
+        backoffMillis = Math.min(backoffMillis * 2, locking.getMaxBackoffMillis());
+        farmMetrics.optimisticRetry(color);
+      }
+    }
+  }
+
+  // full jitter, so writers that collided once don't collide again on the same schedule
+  private static void backoff(long backoffMillis, RuntimeException conflict) {
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMillis + 1));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw conflict;
+    }
+  }
+
+  // a failed version check, a deadlock or a lock timeout, or H2 refusing to update a row another writer changed
+  private static boolean isConflict(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ConcurrencyFailureException) {
+        return true;
+      }
+      if (cause instanceof SQLException && ((SQLException) cause).getErrorCode() == H2_CONCURRENT_UPDATE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,126 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.config.ShardRoutingDataSource;
+import com.logicgate.farm.domain.Color;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Maps every color to the shard that holds its barns and animals, see {@link ShardRoutingDataSource}.  Barn layouts
+ * never span colors, so a write of a single color always runs against a single shard, while reads of the whole farm
+ * fan out to every shard in parallel.
+ * </p>
+ *
+ * <p>
+ * Without sharding there is a single shard, and everything runs on the calling thread.
+ * </p>
+ */
+@Component
+public class ColorShards {
+
+  private final int shardCount;
+
+  private final ThreadPoolTaskExecutor shardExecutor;
+
+  @Autowired
+  public ColorShards(FarmProperties farmProperties, @Qualifier("shardExecutor") ThreadPoolTaskExecutor shardExecutor) {
+    FarmProperties.Sharding sharding = farmProperties.getSharding();
+    this.shardCount = sharding.isEnabled() ? sharding.getShards().size() : 1;
+    this.shardExecutor = shardExecutor;
+  }
+
+  public boolean isSharded() {
+    return shardCount > 1;
+  }
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  public int shardOf(Color color) {
+    return color.ordinal() % shardCount;
+  }
+
+  /**
+   * <p>
+   * Run the work of a color against its shard.  The work has to start its own transaction, one that is already
+   * running stays on the shard it began on.
+   * </p>
+   * @param color the color being read or written
+   * @param work the work
+   * @return the result of the work
+   */
+  public <T> T onShardOf(Color color, Supplier<T> work) {
+    return onShard(shardOf(color), work);
+  }
+
+  public <T> T onShard(int shard, Supplier<T> work) {
+    return isSharded() ? ShardRoutingDataSource.onShard(shard, work) : work.get();
+  }
+
+  /**
+   * <p>
+   * Make sure the running transaction can write a color, which it can only if it runs on the color's shard.
+   * </p>
+   * @param color the color about to be written
+   */
+  public void checkShard(Color color) {
+    if (isSharded() && ShardRoutingDataSource.currentShard() != shardOf(color)) {
+      throw new IllegalStateException(String.format("%s lives on shard %d, it can't be written by a transaction "
+          + "on shard %d.", color.name(), shardOf(color), ShardRoutingDataSource.currentShard()));
+    }
+  }
+
+  /**
+   * <p>
+   * Run work against every shard at once, each on a thread of its own.
+   * </p>
+   * @param work the work of a single shard, given the shard index, starting its own transaction if it needs one
+   * @return the result of every shard, in shard order
+   */
+  public <T> List<T> fanOut(IntFunction<T> work) {
+    if (!isSharded()) {
+      List<T> results = new ArrayList<>();
+      results.add(work.apply(0));
+      return results;
+    }
+    List<Future<T>> pendingResults = new ArrayList<>();
+    for (int shard = 0; shard < shardCount; shard++) {
+      int target = shard;
+      pendingResults.add(shardExecutor.submit(() -> ShardRoutingDataSource.onShard(target, () -> work.apply(target))));
+    }
+    List<T> results = new ArrayList<>();
+    try {
+      for (Future<T> pendingResult : pendingResults) {
+        results.add(pendingResult.get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the shards.", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("A shard failed unexpectedly.", e.getCause());
+    }
+    return results;
+  }
+
+  public void fanOut(Runnable work) {
+    fanOut(shard -> {
+      work.run();
+      return null;
+    });
+  }
+
+}
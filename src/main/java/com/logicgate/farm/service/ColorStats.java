@@ -0,0 +1,67 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Color;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Barns, animals and free room of a single color, see {@link FarmStatsService}.
+ */
+public class ColorStats {
+
+  private final Color color;
+
+  private long barnCount;
+
+  private long animalCount;
+
+  private long capacity;
+
+  // number of barns by the number of animals they house
+  private final SortedMap<Integer, Long> occupancyHistogram = new TreeMap<>();
+
+  public ColorStats(Color color) {
+    this.color = color;
+  }
+
+  // count a group of barns of this color that house the same number of animals
+  void add(int headCount, int barnCapacity, long barns) {
+    barnCount += barns;
+    animalCount += headCount * barns;
+    capacity += barnCapacity * barns;
+    occupancyHistogram.merge(headCount, barns, Long::sum);
+  }
+
+  public Color getColor() {
+    return color;
+  }
+
+  public long getBarnCount() {
+    return barnCount;
+  }
+
+  public long getAnimalCount() {
+    return animalCount;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public long getFreeCapacity() {
+    return capacity - animalCount;
+  }
+
+  public SortedMap<Integer, Long> getOccupancyHistogram() {
+    return Collections.unmodifiableSortedMap(occupancyHistogram);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ColorStats[color=%s, barnCount=%d, animalCount=%d, freeCapacity=%d]",
+        color.name(), barnCount, animalCount, getFreeCapacity());
+  }
+
+}
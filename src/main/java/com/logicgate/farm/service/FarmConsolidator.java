@@ -0,0 +1,159 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.domain.Color;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * <p>
+ * Keeps track of the colors whose removals have not been consolidated yet when {@code farm.consolidation.deferred}
+ * is set, and consolidates each of them in the background.  A color is consolidated at the latest max-delay-millis
+ * after its first pending removal committed, and right away once max-pending-changes removals are pending.
+ * </p>
+ *
+ * <p>
+ * Consolidation goes through {@link AnimalService#consolidate(Color)}, so it takes the color's lock like any other
+ * write.  A consolidation that fails keeps its removals pending and is tried again after the delay.
+ * </p>
+ */
+@Component
+public class FarmConsolidator {
+
+  private final FarmProperties farmProperties;
+
+  private final FarmMetrics farmMetrics;
+
+  private final ThreadPoolTaskScheduler consolidationScheduler;
+
+  // the service depends on this consolidator, so it is only looked up once a consolidation runs
+  private final ObjectProvider<AnimalService> animalService;
+
+  // guarded by this
+  private final Map<Color, Integer> pendingChanges = new EnumMap<>(Color.class);
+
+  // guarded by this, the consolidation scheduled for each dirty color
+  private final Map<Color, ScheduledFuture<?>> scheduledConsolidations = new EnumMap<>(Color.class);
+
+  @Autowired
+  public FarmConsolidator(FarmProperties farmProperties, FarmMetrics farmMetrics,
+                          @Qualifier("consolidationScheduler") ThreadPoolTaskScheduler consolidationScheduler,
+                          ObjectProvider<AnimalService> animalService) {
+    this.farmProperties = farmProperties;
+    this.farmMetrics = farmMetrics;
+    this.consolidationScheduler = consolidationScheduler;
+    this.animalService = animalService;
+  }
+
+  public boolean isDeferred() {
+    return farmProperties.getConsolidation().isDeferred();
+  }
+
+  /**
+   * <p>
+   * Note removals that were not consolidated, once the current transaction commits.
+   * </p>
+   * @param color the color the animals were removed from
+   * @param count the number of animals removed
+   */
+  public void changed(Color color, int count) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          committed(color, count);
+        }
+      });
+    }
+    else {
+      committed(color, count);
+    }
+  }
+
+  /**
+   * <p>
+   * Forget the pending removals of a color once the current transaction, which consolidates it while holding its
+   * lock, commits.  Removals committed after it are still pending.
+   * </p>
+   * @param color the color being consolidated
+   */
+  public void consolidated(Color color) {
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        clear(color);
+      }
+    });
+  }
+
+  public synchronized boolean isDirty(Color color) {
+    return pendingChanges.containsKey(color);
+  }
+
+  public synchronized int getPendingChanges(Color color) {
+    return pendingChanges.getOrDefault(color, 0);
+  }
+
+  private synchronized void committed(Color color, int count) {
+    int pending = pendingChanges.merge(color, count, Integer::sum);
+    ScheduledFuture<?> scheduled = scheduledConsolidations.get(color);
+    FarmProperties.Consolidation consolidation = farmProperties.getConsolidation();
+    if (scheduled == null) {
+      schedule(color, pending >= consolidation.getMaxPendingChanges() ? 0 : consolidation.getMaxDelayMillis());
+    }
+    // too many removals to wait out the delay, unless the consolidation has already started
+    else if (pending >= consolidation.getMaxPendingChanges() && scheduled.cancel(false)) {
+      schedule(color, 0);
+    }
+  }
+
+  // guarded by this
+  private void schedule(Color color, long delayMillis) {
+    scheduledConsolidations.put(color, consolidationScheduler.schedule(() -> consolidate(color),
+        new Date(System.currentTimeMillis() + delayMillis)));
+  }
+
+  private synchronized void clear(Color color) {
+    pendingChanges.remove(color);
+    ScheduledFuture<?> scheduled = scheduledConsolidations.remove(color);
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+
+  private void consolidate(Color color) {
+    int consolidating;
+    synchronized (this) {
+      // removals committed from here on are left for the next consolidation
+      consolidating = pendingChanges.getOrDefault(color, 0);
+      pendingChanges.remove(color);
+      scheduledConsolidations.remove(color);
+    }
+    try {
+      animalService.getObject().consolidate(color);
+    }
+    catch (RuntimeException e) {
+      farmMetrics.consolidationFailed(color);
+      retry(color, consolidating);
+    }
+  }
+
+  // put the removals back and try again after the delay, even when enough are pending to go right away
+  private synchronized void retry(Color color, int count) {
+    pendingChanges.merge(color, count, Integer::sum);
+    if (!scheduledConsolidations.containsKey(color)) {
+      schedule(color, farmProperties.getConsolidation().getMaxDelayMillis());
+    }
+  }
+
+}
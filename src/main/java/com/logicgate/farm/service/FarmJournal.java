@@ -0,0 +1,174 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.util.JournalRecord;
+import com.logicgate.farm.util.MoveJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * The farm's {@link MoveJournal}, when {@code farm.journal.enabled} is set.  Changes recorded by the service are
+ * gathered for the rest of their transaction and only appended once it has committed, so the journal never holds a
+ * change that was rolled back.  The append happens before the transaction's color locks are released, so changes
+ * to a locked color are journaled in the order they were committed.  Optimistic colors are the exception: their
+ * writers hold no lock, so two writers that commit one after the other may append in the opposite order.  A consumer
+ * that needs the commit order of such a color has to go by the records themselves, e.g. an animal is only moved or
+ * removed once it was added.
+ * </p>
+ *
+ * <p>
+ * Changes are only journaled going forward, a snapshot restore or a farm built before the journal was enabled is not
+ * part of it.
+ * </p>
+ *
+ * <p>
+ * An append that fails can't fail the writes whose changes it held, they have already committed.  It is logged and
+ * the journal is failed instead: later commits are no longer appended, and reading or subscribing reports the
+ * failure, since the journal no longer follows the farm.
+ * </p>
+ */
+@Component
+public class FarmJournal {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FarmJournal.class);
+
+  private final MoveJournal journal;
+
+  // the append that failed the journal, if one did
+  private volatile IOException failure;
+
+  @Autowired
+  public FarmJournal(FarmProperties farmProperties) throws IOException {
+    FarmProperties.Journal properties = farmProperties.getJournal();
+    this.journal = properties.isEnabled()
+        ? new MoveJournal(Paths.get(properties.getDirectory()), properties.getSegmentRecords(), properties.isFsync())
+        : null;
+  }
+
+  public boolean isEnabled() {
+    return journal != null;
+  }
+
+  /**
+   * <p>
+   * Journal a change once the current transaction commits.  Does nothing when the journal is disabled.
+   * </p>
+   * @param record the change
+   */
+  public void record(JournalRecord record) {
+    record(Collections.singletonList(record));
+  }
+
+  /**
+   * <p>
+   * Journal a group of changes once the current transaction commits, in the given order.
+   * </p>
+   * @param records the changes
+   */
+  public void record(List<JournalRecord> records) {
+    if (journal != null && failure == null && !records.isEmpty()) {
+      pendingRecords().records.addAll(records);
+    }
+  }
+
+  /**
+   * <p>
+   * Follow the journal from the given offset, see {@link MoveJournal#subscribe(long, Consumer)}.
+   * </p>
+   * @param fromOffset offset of the first record to hand out
+   * @param consumer receives the records
+   * @return the running subscription
+   */
+  public MoveJournal.Subscription subscribe(long fromOffset, Consumer<JournalRecord> consumer) {
+    return journal().subscribe(fromOffset, consumer);
+  }
+
+  public List<JournalRecord> read(long fromOffset, int maxRecords) throws IOException {
+    return journal().read(fromOffset, maxRecords);
+  }
+
+  public long getEndOffset() {
+    return journal().getEndOffset();
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  public boolean isFailed() {
+    return failure != null;
+  }
+
+  private MoveJournal journal() {
+    if (journal == null) {
+      throw new IllegalStateException("The journal is not enabled.");
+    }
+    if (failure != null) {
+      throw new IllegalStateException("The journal failed and no longer follows the farm.", failure);
+    }
+    return journal;
+  }
+
+  // stop journaling for good, the changes that could not be appended are missing from the journal
+  private synchronized void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+      LOG.error("Committed changes could not be journaled, the journal is failed and nothing more is appended.", e);
+    }
+  }
+
+  // the records of the current transaction, registered with it on first use
+  private PendingRecords pendingRecords() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      throw new IllegalStateException("Changes can only be journaled inside a transaction.");
+    }
+    Optional<PendingRecords> pending = TransactionSynchronizationManager.getSynchronizations().stream()
+        .filter(PendingRecords.class::isInstance)
+        .map(PendingRecords.class::cast)
+        .findFirst();
+    if (pending.isPresent()) {
+      return pending.get();
+    }
+    PendingRecords records = new PendingRecords();
+    TransactionSynchronizationManager.registerSynchronization(records);
+    return records;
+  }
+
+  private final class PendingRecords extends TransactionSynchronizationAdapter {
+
+    private final List<JournalRecord> records = new ArrayList<>();
+
+    // runs ahead of every afterCompletion, i.e. while the color locks are still held
+    @Override
+    public void afterCommit() {
+      if (failure != null) {
+        return;
+      }
+      try {
+        journal.append(records);
+      }
+      catch (IOException e) {
+        fail(e);
+      }
+    }
+
+  }
+
+}
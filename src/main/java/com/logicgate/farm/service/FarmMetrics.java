@@ -0,0 +1,167 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Color;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Meters of the farm's write path, published through the actuator metrics endpoint (/actuator/metrics).  Every meter
+ * is tagged with the color it measures, so that a hot color stands out from the others.
+ * </p>
+ *
+ * <ul>
+ *   <li>farm.operation - latency of a whole operation on a color, tagged by operation</li>
+ *   <li>farm.operation.phase - latency of the lock wait, occupancy reload, planning and flush of an operation</li>
+ *   <li>farm.barns.created, farm.barns.destroyed - barns built and torn down</li>
+ *   <li>farm.animals.moved - animals moved between barns by a single reorganization</li>
+ *   <li>farm.lock.queued - threads currently waiting for a color's lock in this JVM</li>
+ *   <li>farm.optimistic.conflicts - optimistic writes that lost to another writer of their color</li>
+ *   <li>farm.optimistic.retries - optimistic writes started over after a conflict</li>
+ *   <li>farm.optimistic.exhausted - optimistic writes that ran out of attempts</li>
+ *   <li>farm.consolidation.failures - deferred consolidations that failed and were rescheduled</li>
+ *   <li>farm.stripes.escalations - single adds of a striped color that found no stripe with room and locked it all</li>
+ *   <li>farm.stripes.unbalanced - how long a striped color's barns were more than one animal apart</li>
+ *   <li>farm.stripes.balance.failures - rebalances of a striped color that failed and were left for the next check</li>
+ * </ul>
+ */
+@Component
+public class FarmMetrics {
+
+  private final MeterRegistry meterRegistry;
+
+  @Autowired
+  public FarmMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  public <T> T timeOperation(String operation, Color color, Supplier<T> work) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    try {
+      return work.get();
+    }
+    finally {
+      sample.stop(Timer.builder("farm.operation")
+          .tag("operation", operation)
+          .tag("color", tag(color))
+          .register(meterRegistry));
+    }
+  }
+
+  public void timeOperation(String operation, Color color, Runnable work) {
+    timeOperation(operation, color, () -> {
+      work.run();
+      return null;
+    });
+  }
+
+  public <T> T timePhase(Phase phase, Color color, Supplier<T> work) {
+    long start = System.nanoTime();
+    try {
+      return work.get();
+    }
+    finally {
+      recordPhase(phase, color, System.nanoTime() - start);
+    }
+  }
+
+  public void timePhase(Phase phase, Color color, Runnable work) {
+    timePhase(phase, color, () -> {
+      work.run();
+      return null;
+    });
+  }
+
+  public void recordPhase(Phase phase, Color color, long nanos) {
+    Timer.builder("farm.operation.phase")
+        .tag("phase", phase.tag)
+        .tag("color", tag(color))
+        .register(meterRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void barnsCreated(Color color, int count) {
+    if (count > 0) {
+      Counter.builder("farm.barns.created").tag("color", tag(color)).register(meterRegistry).increment(count);
+    }
+  }
+
+  public void barnsDestroyed(Color color, int count) {
+    if (count > 0) {
+      Counter.builder("farm.barns.destroyed").tag("color", tag(color)).register(meterRegistry).increment(count);
+    }
+  }
+
+  public void animalsMoved(Color color, int count) {
+    DistributionSummary.builder("farm.animals.moved")
+        .baseUnit("animals")
+        .tag("color", tag(color))
+        .register(meterRegistry)
+        .record(count);
+  }
+
+  public void gaugeLockQueue(Color color, ReentrantLock lock) {
+    Gauge.builder("farm.lock.queued", lock, ReentrantLock::getQueueLength)
+        .tag("color", tag(color))
+        .register(meterRegistry);
+  }
+
+  public void optimisticConflict(Color color) {
+    Counter.builder("farm.optimistic.conflicts").tag("color", tag(color)).register(meterRegistry).increment();
+  }
+
+  public void optimisticRetry(Color color) {
+    Counter.builder("farm.optimistic.retries").tag("color", tag(color)).register(meterRegistry).increment();
+  }
+
+  public void optimisticExhausted(Color color) {
+    Counter.builder("farm.optimistic.exhausted").tag("color", tag(color)).register(meterRegistry).increment();
+  }
+
+  public void consolidationFailed(Color color) {
+    Counter.builder("farm.consolidation.failures").tag("color", tag(color)).register(meterRegistry).increment();
+  }
+
+  public void stripeEscalated(Color color) {
+    Counter.builder("farm.stripes.escalations").tag("color", tag(color)).register(meterRegistry).increment();
+  }
+
+  public void stripesUnbalanced(Color color, long nanos) {
+    Timer.builder("farm.stripes.unbalanced")
+        .tag("color", tag(color))
+        .register(meterRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void stripeBalanceFailed(Color color) {
+    Counter.builder("farm.stripes.balance.failures").tag("color", tag(color)).register(meterRegistry).increment();
+  }
+
+  private static String tag(Color color) {
+    return color.name().toLowerCase(Locale.ROOT);
+  }
+
+  public enum Phase {
+    LOCK_WAIT("lock-wait"),
+    RELOAD("reload"),
+    PLANNING("planning"),
+    FLUSH("flush");
+
+    private final String tag;
+
+    Phase(String tag) {
+      this.tag = tag;
+    }
+  }
+
+}
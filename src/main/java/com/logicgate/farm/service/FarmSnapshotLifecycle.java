@@ -0,0 +1,49 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * <p>
+ * Warm restarts, as configured by {@code farm.snapshot}.  The snapshot is restored once the context has been
+ * refreshed, which is before the web server is started, and exported when the context starts closing, while the
+ * database is still available.
+ * </p>
+ */
+@Component
+public class FarmSnapshotLifecycle {
+
+  private final FarmSnapshotService snapshotService;
+
+  private final FarmProperties farmProperties;
+
+  @Autowired
+  public FarmSnapshotLifecycle(FarmSnapshotService snapshotService, FarmProperties farmProperties) {
+    this.snapshotService = snapshotService;
+    this.farmProperties = farmProperties;
+  }
+
+  @EventListener(ContextRefreshedEvent.class)
+  public void restoreOnStartup() {
+    Path snapshot = Paths.get(farmProperties.getSnapshot().getPath());
+    if (farmProperties.getSnapshot().isRestoreOnStartup() && Files.exists(snapshot)) {
+      snapshotService.restore(snapshot);
+    }
+  }
+
+  @EventListener(ContextClosedEvent.class)
+  public void exportOnShutdown() {
+    if (farmProperties.getSnapshot().isExportOnShutdown()) {
+      snapshotService.export(Paths.get(farmProperties.getSnapshot().getPath()));
+    }
+  }
+
+}
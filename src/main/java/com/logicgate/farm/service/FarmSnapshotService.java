@@ -0,0 +1,35 @@
+package com.logicgate.farm.service;
+
+import java.nio.file.Path;
+
+/**
+ * Saves the whole farm to a compact binary snapshot and restores it again, e.g. across a restart of an in-memory
+ * database.
+ */
+public interface FarmSnapshotService {
+
+  /**
+   * Writes every barn and animal to the given file, replacing it only once the snapshot is complete and the
+   * transaction it was read in has committed. Every color, optimistic ones included, is locked for the duration, so
+   * the snapshot is a consistent view of the farm.
+   *
+   * @param target the snapshot file
+   * @return the number of barns and animals written
+   * @throws IllegalStateException if the farm is sharded across several databases
+   */
+  SnapshotResult export(Path target);
+
+  /**
+   * Loads a snapshot into an empty farm. The snapshot's checksum and layout (every animal in a barn of its color, no
+   * barn over capacity or empty, every color spread evenly over as few barns as possible) are verified before
+   * anything is written. A snapshot is already balanced, so its barns and animals are inserted as they are, without
+   * any reorganization. Ids are kept when the farm's id sequences have not been used yet, and shifted past them
+   * otherwise.
+   *
+   * @param source the snapshot file
+   * @return the number of barns and animals restored
+   * @throws IllegalStateException if the farm isn't empty, the snapshot is corrupt or the farm is sharded
+   */
+  SnapshotResult restore(Path source);
+
+}
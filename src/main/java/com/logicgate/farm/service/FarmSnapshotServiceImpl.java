@@ -0,0 +1,366 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.AnimalSummary;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.BarnOccupancyIndex;
+import com.logicgate.farm.util.BarnOrganizer;
+import com.logicgate.farm.util.SnapshotReader;
+import com.logicgate.farm.util.SnapshotWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Snapshots are written and read with {@link SnapshotWriter} and {@link SnapshotReader}.  A restore goes around
+ * the entities entirely: the barns, their occupancy and the animals are inserted with JDBC batches in the same
+ * transaction, and the id sequences are moved past the restored ids afterwards.
+ * </p>
+ */
+@Service
+@Transactional
+public class FarmSnapshotServiceImpl implements FarmSnapshotService {
+
+  private static final String INSERT_BARN = "insert into barn (id, name, color, capacity) values (?, ?, ?, ?)";
+
+  private static final String INSERT_OCCUPANCY =
+      "insert into barn_occupancy (barn_id, color, head_count) values (?, ?, ?)";
+
+  private static final String INSERT_ANIMAL =
+      "insert into animal (id, name, favorite_color, barn_id) values (?, ?, ?, ?)";
+
+  private static final String NEXT_VALUE = "select next value for %s";
+
+  private static final String RESTART_SEQUENCE = "alter sequence %s restart with %d";
+
+  private static final String ANIMAL_SEQUENCE = "animal_seq";
+
+  private static final String BARN_SEQUENCE = "barn_seq";
+
+  // ids are handed out in blocks of this size ending at the value drawn from the sequence, see META-INF/orm.xml
+  private static final int ID_ALLOCATION_SIZE = 50;
+
+  private final AnimalRepository animalRepository;
+
+  private final BarnRepository barnRepository;
+
+  private final BarnOccupancyIndex occupancyIndex;
+
+  private final ColorLockManager colorLockManager;
+
+  private final AnimalService animalService;
+
+  private final FarmConsolidator farmConsolidator;
+
+  private final ColorShards colorShards;
+
+  private final FarmProperties farmProperties;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public FarmSnapshotServiceImpl(AnimalRepository animalRepository, BarnRepository barnRepository,
+                                 BarnOccupancyIndex occupancyIndex, ColorLockManager colorLockManager,
+                                 AnimalService animalService, FarmConsolidator farmConsolidator,
+                                 ColorShards colorShards, FarmProperties farmProperties, JdbcTemplate jdbcTemplate) {
+    this.animalRepository = animalRepository;
+    this.barnRepository = barnRepository;
+    this.occupancyIndex = occupancyIndex;
+    this.colorLockManager = colorLockManager;
+    this.animalService = animalService;
+    this.farmConsolidator = farmConsolidator;
+    this.colorShards = colorShards;
+    this.farmProperties = farmProperties;
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public SnapshotResult export(Path target) {
+
+    long start = System.currentTimeMillis();
+    checkUnsharded();
+    lockAllColors(false);
+    // a restore only accepts balanced barns, so removals still waiting for their consolidation and striped colors
+    // still waiting for their rebalance are caught up first
+    for (Color color : Color.values()) {
+      if (farmConsolidator.isDeferred() || colorLockManager.isStriped(color)) {
+        animalService.consolidate(color);
+      }
+    }
+
+    try {
+      SnapshotWriter writer = new SnapshotWriter(target);
+      commitAfterTransaction(writer, target);
+      for (Barn barn : barnRepository.findAll(Sort.by("id"))) {
+        writer.writeBarn(barn.getId(), barn.getName(), barn.getColor(), barn.getCapacity());
+      }
+
+      // animals are read as projections a keyset page at a time, so none of them end up in the persistence context
+      int pageSize = farmProperties.getRead().getPageSize();
+      Long lastId = 0L;
+      List<AnimalSummary> page;
+      do {
+        page = animalRepository.findAnimalSummariesAfter(lastId, PageRequest.of(0, pageSize));
+        for (AnimalSummary animal : page) {
+          if (animal.getBarnId() == null) {
+            throw new IllegalStateException(String.format("Animal %d has no barn and can't be exported.",
+                animal.getId()));
+          }
+          writer.writeAnimal(animal.getId(), animal.getName(), animal.getFavoriteColor(), animal.getBarnId());
+          lastId = animal.getId();
+        }
+      } while (page.size() == pageSize);
+
+      writer.finish();
+      return new SnapshotResult(writer.getBarnCount(), writer.getAnimalCount(), writer.getSize(),
+          System.currentTimeMillis() - start);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to export the farm to %s.", target), e);
+    }
+
+  }
+
+  @Override
+  public SnapshotResult restore(Path source) {
+
+    long start = System.currentTimeMillis();
+    checkUnsharded();
+    lockAllColors(true);
+
+    if (animalRepository.count() > 0 || barnRepository.count() > 0) {
+      throw new IllegalStateException("A snapshot can only be restored into an empty farm.");
+    }
+
+    try (SnapshotReader reader = new SnapshotReader(source)) {
+      SnapshotLayout layout = checkLayout(source, reader);
+
+      // anything below the next sequence value may already have been handed out, restored ids start after it
+      long barnIdShift = nextValue(BARN_SEQUENCE) - 1;
+      long animalIdShift = nextValue(ANIMAL_SEQUENCE) - 1;
+
+      BatchInsert barns = new BatchInsert(INSERT_BARN);
+      reader.readBarns((id, name, color, capacity) -> barns.add(id + barnIdShift, name, color.ordinal(), capacity));
+      barns.finish();
+
+      BatchInsert occupancies = new BatchInsert(INSERT_OCCUPANCY);
+      for (int i = 0; i < layout.barnIds.length; i++) {
+        occupancies.add(layout.barnIds[i] + barnIdShift, layout.barnColors[i], layout.headCounts[i]);
+      }
+      occupancies.finish();
+
+      BatchInsert animals = new BatchInsert(INSERT_ANIMAL);
+      reader.readAnimals((id, name, color, barnId) ->
+          animals.add(id + animalIdShift, name, color.ordinal(), barnId + barnIdShift));
+      animals.finish();
+
+      restartSequence(BARN_SEQUENCE, layout.lastBarnId() + barnIdShift);
+      restartSequence(ANIMAL_SEQUENCE, layout.lastAnimalId + animalIdShift);
+
+      // the index and the cached barns still describe the empty farm, every color is reloaded on its next write
+      for (Color color : Color.values()) {
+        occupancyIndex.invalidate(color);
+        barnRepository.evictBarnsByColor(color);
+      }
+
+      return new SnapshotResult(reader.getBarnCount(), reader.getAnimalCount(), Files.size(source),
+          System.currentTimeMillis() - start);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to restore the farm from %s.", source), e);
+    }
+
+  }
+
+  // a snapshot is read and restored in one transaction, which can't span the databases of a sharded farm
+  private void checkUnsharded() {
+    if (colorShards.isSharded()) {
+      throw new IllegalStateException("Snapshots are only supported on a farm kept in a single database.");
+    }
+  }
+
+  // colors are always locked in the same order, so this never deadlocks with a batch writer, optimistic colors are
+  // held as well so that none of their writers commits halfway through
+  private void lockAllColors(boolean changesFarm) {
+    for (Color color : Color.values()) {
+      colorLockManager.lockExclusively(color, changesFarm);
+    }
+  }
+
+  // the snapshot only replaces the previous one once the transaction it was read in has committed, and is thrown
+  // away otherwise
+  private static void commitAfterTransaction(SnapshotWriter writer, Path target) {
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        try {
+          writer.commit();
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(String.format("Unable to export the farm to %s.", target), e);
+        }
+      }
+
+      @Override
+      public void afterCompletion(int status) {
+        try {
+          writer.close();
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(String.format("Unable to clean up the export to %s.", target), e);
+        }
+      }
+    });
+  }
+
+  // read the snapshot once without writing anything, checking that it holds a farm the service could have built
+  private static SnapshotLayout checkLayout(Path source, SnapshotReader reader) {
+
+    if (reader.getBarnCount() > Integer.MAX_VALUE) {
+      throw invalid(source, "it holds more barns than can be restored");
+    }
+    SnapshotLayout layout = new SnapshotLayout((int) reader.getBarnCount());
+    int[] capacities = new int[layout.barnIds.length];
+
+    int[] barnCount = {0};
+    reader.readBarns((id, name, color, capacity) -> {
+      int barn = barnCount[0]++;
+      if (id <= (barn == 0 ? 0 : layout.barnIds[barn - 1])) {
+        throw invalid(source, "its barns are not in id order");
+      }
+      layout.barnIds[barn] = id;
+      layout.barnColors[barn] = color.ordinal();
+      capacities[barn] = capacity;
+    });
+
+    long[] animalsByColor = new long[Color.values().length];
+    reader.readAnimals((id, name, color, barnId) -> {
+      if (id <= layout.lastAnimalId) {
+        throw invalid(source, "its animals are not in id order");
+      }
+      layout.lastAnimalId = id;
+      int barn = Arrays.binarySearch(layout.barnIds, barnId);
+      if (barn < 0) {
+        throw invalid(source, String.format("animal %d lives in unknown barn %d", id, barnId));
+      }
+      if (layout.barnColors[barn] != color.ordinal()) {
+        throw invalid(source, String.format("animal %d lives in a barn of another color", id));
+      }
+      layout.headCounts[barn]++;
+      animalsByColor[color.ordinal()]++;
+    });
+
+    int[] barnsByColor = new int[Color.values().length];
+    int[] fewestAnimals = new int[Color.values().length];
+    int[] mostAnimals = new int[Color.values().length];
+    Arrays.fill(fewestAnimals, Integer.MAX_VALUE);
+    for (int barn = 0; barn < layout.barnIds.length; barn++) {
+      int headCount = layout.headCounts[barn];
+      if (headCount == 0) {
+        throw invalid(source, String.format("barn %d is empty", layout.barnIds[barn]));
+      }
+      if (headCount > capacities[barn]) {
+        throw invalid(source, String.format("barn %d is over capacity", layout.barnIds[barn]));
+      }
+      int color = layout.barnColors[barn];
+      barnsByColor[color]++;
+      fewestAnimals[color] = Math.min(fewestAnimals[color], headCount);
+      mostAnimals[color] = Math.max(mostAnimals[color], headCount);
+    }
+
+    for (Color color : Color.values()) {
+      int ordinal = color.ordinal();
+      if (barnsByColor[ordinal] != BarnOrganizer.barnsRequired(animalsByColor[ordinal])) {
+        throw invalid(source, String.format("%s animals are not housed in as few barns as possible", color.name()));
+      }
+      if (barnsByColor[ordinal] > 0 && mostAnimals[ordinal] - fewestAnimals[ordinal] > 1) {
+        throw invalid(source, String.format("%s animals are not spread evenly", color.name()));
+      }
+    }
+    return layout;
+
+  }
+
+  private long nextValue(String sequence) {
+    return jdbcTemplate.queryForObject(String.format(NEXT_VALUE, sequence), Long.class);
+  }
+
+  // the first block drawn after the restart ends at the restart value, so it has to start after the last id
+  private void restartSequence(String sequence, long lastId) {
+    jdbcTemplate.execute(String.format(RESTART_SEQUENCE, sequence, lastId + ID_ALLOCATION_SIZE + 1));
+  }
+
+  private static IllegalStateException invalid(Path source, String reason) {
+    return new IllegalStateException(String.format("Snapshot %s does not hold a valid farm, %s.", source, reason));
+  }
+
+  // barns of a snapshot in id order, with the color and head count of each
+  private static final class SnapshotLayout {
+
+    private final long[] barnIds;
+
+    private final int[] barnColors;
+
+    private final int[] headCounts;
+
+    private long lastAnimalId = 0;
+
+    SnapshotLayout(int barnCount) {
+      this.barnIds = new long[barnCount];
+      this.barnColors = new int[barnCount];
+      this.headCounts = new int[barnCount];
+    }
+
+    long lastBarnId() {
+      return barnIds.length == 0 ? 0 : barnIds[barnIds.length - 1];
+    }
+
+  }
+
+  // rows gathered into JDBC batches of the configured size
+  private final class BatchInsert {
+
+    private final String sql;
+
+    private final int batchSize = farmProperties.getSnapshot().getBatchSize();
+
+    private final List<Object[]> rows = new ArrayList<>(batchSize);
+
+    BatchInsert(String sql) {
+      this.sql = sql;
+    }
+
+    void add(Object... row) {
+      rows.add(row);
+      if (rows.size() >= batchSize) {
+        finish();
+      }
+    }
+
+    void finish() {
+      if (!rows.isEmpty()) {
+        jdbcTemplate.batchUpdate(sql, rows);
+        rows.clear();
+      }
+    }
+
+  }
+
+}
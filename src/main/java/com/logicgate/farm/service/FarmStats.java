@@ -0,0 +1,39 @@
+package com.logicgate.farm.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Totals of the whole farm along with the stats of every color, see {@link FarmStatsService}.
+ */
+public class FarmStats {
+
+  private final List<ColorStats> colors;
+
+  public FarmStats(List<ColorStats> colors) {
+    this.colors = Collections.unmodifiableList(colors);
+  }
+
+  public List<ColorStats> getColors() {
+    return colors;
+  }
+
+  public long getBarnCount() {
+    return colors.stream().mapToLong(ColorStats::getBarnCount).sum();
+  }
+
+  public long getAnimalCount() {
+    return colors.stream().mapToLong(ColorStats::getAnimalCount).sum();
+  }
+
+  public long getFreeCapacity() {
+    return colors.stream().mapToLong(ColorStats::getFreeCapacity).sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("FarmStats[barnCount=%d, animalCount=%d, freeCapacity=%d]",
+        getBarnCount(), getAnimalCount(), getFreeCapacity());
+  }
+
+}
@@ -0,0 +1,27 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Color;
+
+/**
+ * Barn counts, animal totals, occupancy histograms and free capacity for dashboards, read from the barn_occupancy
+ * summary that every committed write keeps up to date. No animal is ever read, so the cost only grows with the
+ * number of colors and distinct head counts.
+ */
+public interface FarmStatsService {
+
+  /**
+   * Stats of every color, colors without barns included, as of a single read of the summary.
+   *
+   * @return the farm's stats
+   */
+  FarmStats getStats();
+
+  /**
+   * Stats of a single color.
+   *
+   * @param color the color
+   * @return the color's stats
+   */
+  ColorStats getStats(Color color);
+
+}
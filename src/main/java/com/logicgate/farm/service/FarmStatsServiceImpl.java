@@ -0,0 +1,56 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.OccupancyBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class FarmStatsServiceImpl implements FarmStatsService {
+
+  private final BarnOccupancyRepository occupancyRepository;
+
+  private final ColorShards colorShards;
+
+  @Autowired
+  public FarmStatsServiceImpl(BarnOccupancyRepository occupancyRepository, ColorShards colorShards) {
+    this.occupancyRepository = occupancyRepository;
+    this.colorShards = colorShards;
+  }
+
+  @Override
+  public FarmStats getStats() {
+    return new FarmStats(new ArrayList<>(colorStats().values()));
+  }
+
+  @Override
+  public ColorStats getStats(Color color) {
+    ColorStats colorStats = new ColorStats(color);
+    // a single color is read from its own shard, and only its own rows of the summary
+    for (OccupancyBucket bucket : colorShards.onShardOf(color, () -> occupancyRepository.findOccupancyBuckets(color))) {
+      colorStats.add(bucket.getHeadCount(), bucket.getCapacity(), bucket.getBarnCount());
+    }
+    return colorStats;
+  }
+
+  // every color in color order, filled in from one grouped read of the summary on each shard, all read at once
+  private Map<Color, ColorStats> colorStats() {
+    Map<Color, ColorStats> colorStats = new EnumMap<>(Color.class);
+    for (Color color : Color.values()) {
+      colorStats.put(color, new ColorStats(color));
+    }
+    for (List<OccupancyBucket> buckets : colorShards.fanOut(shard -> occupancyRepository.findOccupancyBuckets())) {
+      for (OccupancyBucket bucket : buckets) {
+        colorStats.get(bucket.getColor()).add(bucket.getHeadCount(), bucket.getCapacity(), bucket.getBarnCount());
+      }
+    }
+    return colorStats;
+  }
+
+}
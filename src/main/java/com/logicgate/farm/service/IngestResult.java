@@ -0,0 +1,68 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Color;
+
+import java.util.Optional;
+
+/**
+ * The outcome of ingesting the animals of a single color, see {@link AnimalService#ingestToFarm(java.util.List)}.
+ */
+public class IngestResult {
+
+  private final Color color;
+
+  private final int animalCount;
+
+  private final int barnsCreated;
+
+  private final long elapsedMillis;
+
+  private final Exception failure;
+
+  private IngestResult(Color color, int animalCount, int barnsCreated, long elapsedMillis, Exception failure) {
+    this.color = color;
+    this.animalCount = animalCount;
+    this.barnsCreated = barnsCreated;
+    this.elapsedMillis = elapsedMillis;
+    this.failure = failure;
+  }
+
+  public static IngestResult succeeded(Color color, int animalCount, int barnsCreated, long elapsedMillis) {
+    return new IngestResult(color, animalCount, barnsCreated, elapsedMillis, null);
+  }
+
+  public static IngestResult failed(Color color, int animalCount, long elapsedMillis, Exception failure) {
+    return new IngestResult(color, animalCount, 0, elapsedMillis, failure);
+  }
+
+  public Color getColor() {
+    return color;
+  }
+
+  public int getAnimalCount() {
+    return animalCount;
+  }
+
+  public int getBarnsCreated() {
+    return barnsCreated;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public Optional<Exception> getFailure() {
+    return Optional.ofNullable(failure);
+  }
+
+  public boolean isSucceeded() {
+    return failure == null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("IngestResult[color=%s, animalCount=%d, barnsCreated=%d, elapsedMillis=%d, failure=%s]",
+      color.name(), animalCount, barnsCreated, elapsedMillis, failure);
+  }
+
+}
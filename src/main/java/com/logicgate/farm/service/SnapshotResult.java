@@ -0,0 +1,45 @@
+package com.logicgate.farm.service;
+
+/**
+ * What a snapshot export or restore covered, see {@link FarmSnapshotService}.
+ */
+public class SnapshotResult {
+
+  private final long barnCount;
+
+  private final long animalCount;
+
+  private final long sizeBytes;
+
+  private final long elapsedMillis;
+
+  public SnapshotResult(long barnCount, long animalCount, long sizeBytes, long elapsedMillis) {
+    this.barnCount = barnCount;
+    this.animalCount = animalCount;
+    this.sizeBytes = sizeBytes;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public long getBarnCount() {
+    return barnCount;
+  }
+
+  public long getAnimalCount() {
+    return animalCount;
+  }
+
+  public long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SnapshotResult[barnCount=%d, animalCount=%d, sizeBytes=%d, elapsedMillis=%d]",
+        barnCount, animalCount, sizeBytes, elapsedMillis);
+  }
+
+}
@@ -0,0 +1,126 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.util.BarnOccupancyIndex;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Keeps the barns of striped colors balanced.  A single add to a striped color only looks at the barns of the stripe
+ * it locked, so the color's barns can drift more than one animal apart while its stripes are written side by side.
+ * Every stripe-balance-millis each striped color that drifted is rebalanced through
+ * {@link AnimalService#consolidate(Color)}, which locks the color as a whole like any other reorganization.
+ * </p>
+ *
+ * <p>
+ * The time from the commit that left a color unbalanced to the check that finds it balanced again is recorded as
+ * farm.stripes.unbalanced.  A rebalance that fails is simply tried again on the next check.
+ * </p>
+ */
+@Component
+public class StripeBalancer {
+
+  private final FarmProperties farmProperties;
+
+  private final ColorLockManager colorLockManager;
+
+  private final BarnOccupancyIndex occupancyIndex;
+
+  private final FarmMetrics farmMetrics;
+
+  private final ThreadPoolTaskScheduler consolidationScheduler;
+
+  // the service depends on this balancer, so it is only looked up once a rebalance runs
+  private final ObjectProvider<AnimalService> animalService;
+
+  // guarded by this, when each unbalanced color was first found unbalanced
+  private final Map<Color, Long> unbalancedSince = new EnumMap<>(Color.class);
+
+  @Autowired
+  public StripeBalancer(FarmProperties farmProperties, ColorLockManager colorLockManager,
+                        BarnOccupancyIndex occupancyIndex, FarmMetrics farmMetrics,
+                        @Qualifier("consolidationScheduler") ThreadPoolTaskScheduler consolidationScheduler,
+                        ObjectProvider<AnimalService> animalService) {
+    this.farmProperties = farmProperties;
+    this.colorLockManager = colorLockManager;
+    this.occupancyIndex = occupancyIndex;
+    this.farmMetrics = farmMetrics;
+    this.consolidationScheduler = consolidationScheduler;
+    this.animalService = animalService;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (farmProperties.getLocking().getStripes().keySet().stream().anyMatch(colorLockManager::isStriped)) {
+      consolidationScheduler.scheduleWithFixedDelay(this::balance,
+          farmProperties.getLocking().getStripeBalanceMillis());
+    }
+  }
+
+  /**
+   * <p>
+   * Note a write to a single stripe of a color, once the current transaction commits.  If it left the color's barns
+   * more than one animal apart, the color counts as unbalanced from then on.
+   * </p>
+   * @param color the striped color that was written
+   */
+  public void written(Color color) {
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        if (isUnbalanced(color)) {
+          unbalanced(color);
+        }
+      }
+    });
+  }
+
+  private synchronized void unbalanced(Color color) {
+    unbalancedSince.putIfAbsent(color, System.nanoTime());
+  }
+
+  private synchronized void balanced(Color color) {
+    Long since = unbalancedSince.remove(color);
+    if (since != null) {
+      farmMetrics.stripesUnbalanced(color, System.nanoTime() - since);
+    }
+  }
+
+  private void balance() {
+    for (Color color : farmProperties.getLocking().getStripes().keySet()) {
+      if (!colorLockManager.isStriped(color)) {
+        continue;
+      }
+      if (isUnbalanced(color)) {
+        // a write that committed while another stripe's write was still under way may have found it balanced
+        unbalanced(color);
+        try {
+          animalService.getObject().consolidate(color);
+        }
+        catch (RuntimeException e) {
+          farmMetrics.stripeBalanceFailed(color);
+        }
+      }
+      if (!isUnbalanced(color)) {
+        balanced(color);
+      }
+    }
+  }
+
+  // read without the color's lock, a stale answer only moves the rebalance to the next check
+  private boolean isUnbalanced(Color color) {
+    return occupancyIndex.isLoaded(color) && occupancyIndex.spread(color) > 1;
+  }
+
+}
@@ -0,0 +1,44 @@
+package com.logicgate.farm.util;
+
+/**
+ * <p>
+ * A number of animals that must be moved from one barn to another.  A move without a source barn
+ * represents newly arrived animals that are not housed yet.
+ * </p>
+ */
+public class BarnMove {
+
+  private final Long sourceBarnId;
+
+  private final Long targetBarnId;
+
+  private final int animalCount;
+
+  public BarnMove(Long sourceBarnId, Long targetBarnId, int animalCount) {
+    this.sourceBarnId = sourceBarnId;
+    this.targetBarnId = targetBarnId;
+    this.animalCount = animalCount;
+  }
+
+  public Long getSourceBarnId() {
+    return sourceBarnId;
+  }
+
+  public Long getTargetBarnId() {
+    return targetBarnId;
+  }
+
+  public int getAnimalCount() {
+    return animalCount;
+  }
+
+  public boolean isArrival() {
+    return sourceBarnId == null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BarnMove[source=%d, target=%d, animalCount=%d]", sourceBarnId, targetBarnId, animalCount);
+  }
+
+}
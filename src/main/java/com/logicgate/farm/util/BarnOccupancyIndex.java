@@ -0,0 +1,253 @@
+package com.logicgate.farm.util;
+
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * In-memory head count of every barn, grouped by color.  Barns of a color are kept ordered by population so that
+ * the least populated barn can be found in O(log barns) without going back to the database.
+ * The index is loaded once at startup and then kept in step by the service on every add and remove, always while
+ * holding the lock for the color being changed.  A color that is invalidated (e.g. after a rollback) reports
+ * itself as not loaded until it is reloaded.
+ * </p>
+ */
+@Component
+public class BarnOccupancyIndex {
+
+  private final ConcurrentHashMap<Color, ColorOccupancy> occupancies = new ConcurrentHashMap<>();
+
+  /**
+   * <p>
+   * Replace the occupancy of a color with the given barns and head counts.
+   * </p>
+   * @param color the color being loaded
+   * @param barns every barn of the color
+   * @param headCounts head count keyed by barn id, barns without an entry are considered empty
+   */
+  public void load(Color color, Collection<Barn> barns, Map<Long, Integer> headCounts) {
+    ColorOccupancy occupancy = new ColorOccupancy();
+    barns.forEach(barn -> occupancy.put(barn, headCounts.getOrDefault(barn.getId(), 0)));
+    occupancies.put(color, occupancy);
+  }
+
+  public boolean isLoaded(Color color) {
+    return occupancies.containsKey(color);
+  }
+
+  public void invalidate(Color color) {
+    occupancies.remove(color);
+  }
+
+  /**
+   * <p>
+   * Reset every color to an empty, loaded state.  Used when all animals are removed at once.
+   * </p>
+   */
+  public void clear() {
+    for (Color color : Color.values()) {
+      occupancies.put(color, new ColorOccupancy());
+    }
+  }
+
+  public int animalCount(Color color) {
+    return occupancy(color).animalCount();
+  }
+
+  public int barnCount(Color color) {
+    return occupancy(color).barnCount();
+  }
+
+  public int headCount(Color color, Long barnId) {
+    return occupancy(color).headCount(barnId);
+  }
+
+  public Optional<Barn> leastPopulatedBarn(Color color) {
+    return occupancy(color).leastPopulated();
+  }
+
+  /**
+   * <p>
+   * The least populated barn of every stripe of a color that has barns, from the least to the most populated.
+   * </p>
+   * @param color the color to inspect
+   * @param stripes the number of stripes the color's barns are split into, see {@link #stripeOf(Long, int)}
+   * @return one barn per stripe
+   */
+  public List<Barn> leastPopulatedBarns(Color color, int stripes) {
+    return occupancy(color).leastPopulated(stripes);
+  }
+
+  public Optional<Barn> leastPopulatedBarn(Color color, int stripes, int stripe) {
+    return occupancy(color).leastPopulated(stripes, stripe);
+  }
+
+  /**
+   * <p>
+   * Head count of the most populated barn of a color less that of the least populated one, which the service keeps
+   * at one at most.
+   * </p>
+   * @param color the color to inspect
+   * @return the difference in head count, 0 when the color has no barns
+   */
+  public int spread(Color color) {
+    return occupancy(color).spread();
+  }
+
+  // the stripe a barn belongs to, barns are dealt out over the stripes by id
+  public static int stripeOf(Long barnId, int stripes) {
+    return (int) Math.floorMod(barnId, (long) stripes);
+  }
+
+  /**
+   * <p>
+   * Snapshot of the head counts for a color, ordered from the least to the most populated barn.
+   * </p>
+   * @param color the color to inspect
+   * @return head count keyed by barn id
+   */
+  public Map<Long, Integer> headCounts(Color color) {
+    return occupancy(color).snapshot();
+  }
+
+  public Barn barn(Color color, Long barnId) {
+    return occupancy(color).barn(barnId);
+  }
+
+  public List<Barn> barns(Color color) {
+    return occupancy(color).barns();
+  }
+
+  /**
+   * <p>
+   * Add (or remove, when negative) animals to the head count of a barn, registering the barn if it is new.
+   * </p>
+   * @param color the color of the barn
+   * @param barn the barn whose population changed
+   * @param delta the change in population
+   */
+  public void adjust(Color color, Barn barn, int delta) {
+    occupancy(color).adjust(barn, delta);
+  }
+
+  public void removeBarn(Color color, Long barnId) {
+    occupancy(color).remove(barnId);
+  }
+
+  private ColorOccupancy occupancy(Color color) {
+    ColorOccupancy occupancy = occupancies.get(color);
+    if (occupancy == null) {
+      throw new IllegalStateException(String.format("Occupancy for %s has not been loaded.", color.name()));
+    }
+    return occupancy;
+  }
+
+  // barns and head counts for one color, ordered by population then barn id
+  private static final class ColorOccupancy {
+
+    private final Map<Long, Barn> barns = new HashMap<>();
+
+    private final Map<Long, Integer> counts = new HashMap<>();
+
+    private final NavigableSet<Long> byPopulation = new TreeSet<>((left, right) -> {
+      int compared = Integer.compare(counts.get(left), counts.get(right));
+      return compared != 0 ? compared : Long.compare(left, right);
+    });
+
+    private int animalCount;
+
+    synchronized void put(Barn barn, int headCount) {
+      remove(barn.getId());
+      barns.put(barn.getId(), barn);
+      counts.put(barn.getId(), headCount);
+      byPopulation.add(barn.getId());
+      animalCount += headCount;
+    }
+
+    synchronized void adjust(Barn barn, int delta) {
+      // keep the instance we already know about, callers may hold a copy from their own persistence context
+      put(barns.getOrDefault(barn.getId(), barn), headCount(barn.getId()) + delta);
+    }
+
+    synchronized void remove(Long barnId) {
+      if (counts.containsKey(barnId)) {
+        // the ordering reads the count, so drop the barn from the set before forgetting it
+        byPopulation.remove(barnId);
+        animalCount -= counts.remove(barnId);
+        barns.remove(barnId);
+      }
+    }
+
+    synchronized int headCount(Long barnId) {
+      return counts.getOrDefault(barnId, 0);
+    }
+
+    synchronized int animalCount() {
+      return animalCount;
+    }
+
+    synchronized int barnCount() {
+      return barns.size();
+    }
+
+    synchronized Optional<Barn> leastPopulated() {
+      return byPopulation.isEmpty() ? Optional.empty() : Optional.of(barns.get(byPopulation.first()));
+    }
+
+    synchronized List<Barn> leastPopulated(int stripes) {
+      List<Barn> leastPopulated = new ArrayList<>();
+      Set<Integer> seenStripes = new HashSet<>();
+      for (Long barnId : byPopulation) {
+        if (seenStripes.add(stripeOf(barnId, stripes))) {
+          leastPopulated.add(barns.get(barnId));
+          if (seenStripes.size() == stripes) {
+            break;
+          }
+        }
+      }
+      return leastPopulated;
+    }
+
+    synchronized Optional<Barn> leastPopulated(int stripes, int stripe) {
+      return byPopulation.stream()
+          .filter(barnId -> stripeOf(barnId, stripes) == stripe)
+          .findFirst()
+          .map(barns::get);
+    }
+
+    synchronized int spread() {
+      return byPopulation.isEmpty() ? 0 : counts.get(byPopulation.last()) - counts.get(byPopulation.first());
+    }
+
+    synchronized Barn barn(Long barnId) {
+      return barns.get(barnId);
+    }
+
+    synchronized List<Barn> barns() {
+      return new ArrayList<>(barns.values());
+    }
+
+    synchronized Map<Long, Integer> snapshot() {
+      Map<Long, Integer> snapshot = new LinkedHashMap<>();
+      byPopulation.forEach(barnId -> snapshot.put(barnId, counts.get(barnId)));
+      return Collections.unmodifiableMap(snapshot);
+    }
+
+  }
+
+}
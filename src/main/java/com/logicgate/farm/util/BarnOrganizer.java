@@ -6,6 +6,7 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -28,51 +29,29 @@ public class BarnOrganizer {
    */
   public List<Animal> organizeAnimals(Map<Barn, List<Animal>> allBarns) {
 
-    // count of animals
-    Double animalCount = allBarns.values().stream().mapToDouble(List::size).reduce(0, Double::sum);
-    // store a list a overpopulate / dirty animals (animals that will require an update operation)
-    List<Animal> overPopulatedAnimals = new ArrayList<>();
-
-    // number of barns
-    Integer barnCount = (int) Math.ceil(animalCount / FarmUtils.barnCapacity());
-    // base (smaller) count for the barns
-    Integer baseAnimalCount = (int) Math.floor(animalCount / barnCount);
-    // number of remaining animals (where we'll need to have a slightly higher population)
-    Integer remainingCount = (int) (animalCount - (barnCount * baseAnimalCount));
+    // barns are planned by position, since they may not have been persisted (and given an id) yet
+    List<List<Animal>> barns = new ArrayList<>(allBarns.values());
+    Map<Long, Integer> headCounts = new LinkedHashMap<>();
+    for (int i = 0; i < barns.size(); i++) {
+      headCounts.put((long) i, barns.get(i).size());
+    }
 
-    // remove any animals over the base count from all of the barns
-    // remove any animals from excess barns
-    List<List<Animal>> validBarns = new ArrayList<>();
-    // keep an index of the current barn
-    int barnIndex = 0;
-    for (List<Animal> currentBarn : allBarns.values()) {
-      if (barnIndex < barnCount) {
-        // save valid barn
-        validBarns.add(currentBarn);
-        // determine if this barn potentially has too many animals
-        Integer barnOverPopulation = currentBarn.size() - baseAnimalCount;
-        if (barnOverPopulation > 0) {
-          // as we remove the animal, add it to the overpopulated list for use later
-          for (int i = 0; i < barnOverPopulation; i++) {
-            overPopulatedAnimals.add(currentBarn.remove(0));
-          }
-        }
-      }
-      else {
-        // move all animals out of this barn, for later cleanup
-        overPopulatedAnimals.addAll(currentBarn);
-        currentBarn.clear();
-      }
-      barnIndex++;
+    // store a list of moved / dirty animals (animals that will require an update operation)
+    List<Animal> movedAnimals = new ArrayList<>();
+    for (BarnMove move : planMoves(headCounts, 0).getMoves()) {
+      List<Animal> sourceBarn = barns.get(move.getSourceBarnId().intValue());
+      // take animals from the end of the barn, so removing them doesn't shift the rest of the list
+      List<Animal> movingAnimals = sourceBarn.subList(sourceBarn.size() - move.getAnimalCount(), sourceBarn.size());
+      barns.get(move.getTargetBarnId().intValue()).addAll(movingAnimals);
+      movedAnimals.addAll(movingAnimals);
+      movingAnimals.clear();
     }
 
-    // distribute animals as evenly as possible, with remaining barns
-    distributeAnimals(validBarns, overPopulatedAnimals, baseAnimalCount, remainingCount);
     // ensure animals are referencing their correct barn
-    allBarns.entrySet().stream().forEach(e -> e.getValue().forEach(animal -> animal.setBarn(e.getKey())));
+    allBarns.forEach((barn, animals) -> animals.forEach(animal -> animal.setBarn(barn)));
 
     // return animals that were moved / require an update
-    return overPopulatedAnimals;
+    return movedAnimals;
 
   }
 
@@ -88,14 +67,14 @@ public class BarnOrganizer {
   public List<List<Animal>> initializeAnimals(List<Animal> animals) {
 
     // count of animals
-    Double animalCount = (double) animals.size();
+    int animalCount = animals.size();
 
     // number of barns
-    Integer barnCount = (int) Math.ceil(animalCount / FarmUtils.barnCapacity());
+    int barnCount = barnsRequired(animalCount);
     // base (smaller) count for the barns
-    Integer baseAnimalCount = (int) Math.floor(animalCount / barnCount);
+    int baseAnimalCount = barnCount == 0 ? 0 : animalCount / barnCount;
     // number of remaining animals (where we'll need to have a slightly higher population)
-    Integer remainingCount = (int) (animalCount - (barnCount * baseAnimalCount));
+    int remainingCount = animalCount - (barnCount * baseAnimalCount);
 
     // create all of the 'barns' to distribute animals
     List<List<Animal>> initializedBarns = IntStream.range(0, barnCount).mapToObj(value -> new ArrayList<Animal>()).collect(Collectors.toList());
@@ -107,6 +86,60 @@ public class BarnOrganizer {
 
   }
 
+  /**
+   * <p>
+   * Plans the layout of a color from head counts alone, so the caller only has to load the animals that actually
+   * have to move.  The most populated barns are kept and given the larger share of animals, while the least
+   * populated ones are drained when consolidating.  Every animal above its barn's target has to move no matter
+   * which barns are kept, so this yields the smallest possible number of moves for a balanced layout.
+   * New animals that aren't housed yet are placed through moves without a source barn.
+   * This is called per color, so is limited to the one set of barns.
+   * </p>
+   * @param headCounts current population keyed by barn id, including any newly built (empty) barns
+   * @param arrivalCount number of new animals that still need a barn
+   * @return the target population of every barn and the moves required to reach it
+   */
+  public RebalancePlan planMoves(Map<Long, Integer> headCounts, int arrivalCount) {
+
+    // unbox once, the planning itself runs on primitive arrays
+    long[] barnIds = new long[headCounts.size()];
+    int[] counts = new int[headCounts.size()];
+    int barnIndex = 0;
+    for (Map.Entry<Long, Integer> headCount : headCounts.entrySet()) {
+      barnIds[barnIndex] = headCount.getKey();
+      counts[barnIndex++] = headCount.getValue();
+    }
+    LayoutPlan layout = LayoutEngine.plan(barnIds, counts, arrivalCount);
+
+    // the most populated barns are kept, any excess barns are drained for later cleanup
+    Map<Long, Integer> targetCounts = new LinkedHashMap<>();
+    for (int rank = 0; rank < layout.barnCount(); rank++) {
+      int barn = layout.rankedBarn(rank);
+      targetCounts.put(layout.barnId(barn), layout.targetCount(barn));
+    }
+
+    List<BarnMove> moves = new ArrayList<>(layout.moveCount());
+    for (int move = 0; move < layout.moveCount(); move++) {
+      int source = layout.moveSource(move);
+      Long sourceBarnId = (source == LayoutPlan.ARRIVALS) ? null : layout.barnId(source);
+      moves.add(new BarnMove(sourceBarnId, layout.barnId(layout.moveTarget(move)), layout.moveAnimalCount(move)));
+    }
+
+    return new RebalancePlan(targetCounts, moves);
+
+  }
+
+  /**
+   * <p>
+   * Number of barns needed to house the given number of animals without exceeding capacity.
+   * </p>
+   * @param animalCount the number of animals of a single color
+   * @return the number of barns required
+   */
+  public static int barnsRequired(long animalCount) {
+    return (int) ((animalCount + FarmUtils.barnCapacity() - 1) / FarmUtils.barnCapacity());
+  }
+
   /**
    * <p>
    * Distribute the required number of animals to the given barns, using baseAnimalCount as the smaller population.
@@ -116,7 +149,8 @@ public class BarnOrganizer {
    * @param baseAnimalCount the base or lower population count for the ensuring even distribution
    * @param largerBarnCount how many barn are larger, ie have 1 additional head count above the base population
    */
-  private void distributeAnimals(List<List<Animal>> barns, List<Animal> animals, Integer baseAnimalCount, Integer largerBarnCount) {
+  private void distributeAnimals(List<List<Animal>> barns, List<Animal> animals, int baseAnimalCount,
+                                 int largerBarnCount) {
 
     // need to keep a start index to copy animals from
     int animalStartIndex = 0;
@@ -124,8 +158,8 @@ public class BarnOrganizer {
     // to either baseAnimalCount or baseAnimalCount +1
     for (int i = 0; i < barns.size(); i++) {
       List<Animal> currentBarn = barns.get(i);
-      Integer barnTargetPopulation = (i >= largerBarnCount) ? baseAnimalCount : (baseAnimalCount + 1);
-      Integer barnAdditionalNeeded = barnTargetPopulation - currentBarn.size();
+      int barnTargetPopulation = (i >= largerBarnCount) ? baseAnimalCount : (baseAnimalCount + 1);
+      int barnAdditionalNeeded = barnTargetPopulation - currentBarn.size();
       if ((barnAdditionalNeeded > 0) && (animals.size() >= (animalStartIndex + barnAdditionalNeeded))) {
         currentBarn.addAll(animals.subList(animalStartIndex, animalStartIndex + barnAdditionalNeeded));
         animalStartIndex += barnAdditionalNeeded;
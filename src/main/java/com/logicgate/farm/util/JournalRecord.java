@@ -0,0 +1,123 @@
+package com.logicgate.farm.util;
+
+import com.logicgate.farm.domain.Color;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * A single committed change to the farm, as appended to a {@link MoveJournal}.  Every record has the same compact,
+ * fixed size layout: type (byte), color ordinal (byte, -1 when there is none), animal id (long, 0 when there is
+ * none) and barn id (long, 0 when there is none).
+ * </p>
+ */
+public final class JournalRecord {
+
+  public static final int SIZE = Byte.BYTES * 2 + Long.BYTES * 2;
+
+  private static final Color[] COLORS = Color.values();
+
+  private static final Type[] TYPES = Type.values();
+
+  public enum Type {
+    BARN_CREATED,
+    BARN_DESTROYED,
+    ANIMAL_ADDED,
+    ANIMAL_MOVED,
+    ANIMAL_REMOVED,
+    // every animal was removed at once, barns are left in place
+    ANIMALS_CLEARED
+  }
+
+  private final long offset;
+
+  private final Type type;
+
+  private final Color color;
+
+  private final long animalId;
+
+  private final long barnId;
+
+  private JournalRecord(long offset, Type type, Color color, long animalId, long barnId) {
+    this.offset = offset;
+    this.type = type;
+    this.color = color;
+    this.animalId = animalId;
+    this.barnId = barnId;
+  }
+
+  public static JournalRecord barnCreated(Color color, long barnId) {
+    return new JournalRecord(-1, Type.BARN_CREATED, color, 0, barnId);
+  }
+
+  public static JournalRecord barnDestroyed(Color color, long barnId) {
+    return new JournalRecord(-1, Type.BARN_DESTROYED, color, 0, barnId);
+  }
+
+  public static JournalRecord animalAdded(Color color, long animalId, long barnId) {
+    return new JournalRecord(-1, Type.ANIMAL_ADDED, color, animalId, barnId);
+  }
+
+  public static JournalRecord animalMoved(Color color, long animalId, long barnId) {
+    return new JournalRecord(-1, Type.ANIMAL_MOVED, color, animalId, barnId);
+  }
+
+  public static JournalRecord animalRemoved(Color color, long animalId, long barnId) {
+    return new JournalRecord(-1, Type.ANIMAL_REMOVED, color, animalId, barnId);
+  }
+
+  public static JournalRecord animalsCleared() {
+    return new JournalRecord(-1, Type.ANIMALS_CLEARED, null, 0, 0);
+  }
+
+  /**
+   * <p>
+   * Position of the record in its journal, or -1 for a record that hasn't been read back from one.
+   * </p>
+   * @return the offset of the record
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Color getColor() {
+    return color;
+  }
+
+  public long getAnimalId() {
+    return animalId;
+  }
+
+  public long getBarnId() {
+    return barnId;
+  }
+
+  void writeTo(ByteBuffer buffer) {
+    buffer.put((byte) type.ordinal())
+        .put((byte) (color == null ? -1 : color.ordinal()))
+        .putLong(animalId)
+        .putLong(barnId);
+  }
+
+  static JournalRecord readFrom(ByteBuffer buffer, long offset) {
+    int type = buffer.get();
+    int color = buffer.get();
+    if (type < 0 || type >= TYPES.length || color < -1 || color >= COLORS.length) {
+      throw new IllegalStateException(String.format("Journal record %d is corrupt.", offset));
+    }
+    return new JournalRecord(offset, TYPES[type], color == -1 ? null : COLORS[color], buffer.getLong(),
+        buffer.getLong());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("JournalRecord[offset=%d, type=%s, color=%s, animalId=%d, barnId=%d]", offset, type.name(),
+        color == null ? null : color.name(), animalId, barnId);
+  }
+
+}
@@ -0,0 +1,136 @@
+package com.logicgate.farm.util;
+
+import com.logicgate.farm.domain.Color;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Rebuilds the barn of every animal and the color of every barn from a {@link MoveJournal}.  A replay can be fed
+ * records by a subscription to keep following the farm, or run over a journal directory from the command line:
+ * </p>
+ *
+ * <p>
+ *    java -cp farm.jar com.logicgate.farm.util.JournalReplay journal
+ * </p>
+ *
+ * <p>
+ * which prints the barns and animals of every color.  The directory should not be in use by a running application,
+ * opening it drops a record that is only partly written.
+ * </p>
+ */
+public class JournalReplay implements Consumer<JournalRecord> {
+
+  private static final int READ_BATCH = 8192;
+
+  private final Map<Long, Color> barnColors = new HashMap<>();
+
+  private final Map<Long, Long> animalBarns = new HashMap<>();
+
+  private long nextOffset;
+
+  /**
+   * <p>
+   * Replay a journal from its first record up to its current end.
+   * </p>
+   * @param journal the journal to replay
+   * @return the farm as of the end of the journal
+   */
+  public static JournalReplay replay(MoveJournal journal) throws IOException {
+    JournalReplay replay = new JournalReplay();
+    List<JournalRecord> records = journal.read(0, READ_BATCH);
+    while (!records.isEmpty()) {
+      records.forEach(replay);
+      records = journal.read(replay.getNextOffset(), READ_BATCH);
+    }
+    return replay;
+  }
+
+  @Override
+  public void accept(JournalRecord record) {
+    switch (record.getType()) {
+      case BARN_CREATED:
+        barnColors.put(record.getBarnId(), record.getColor());
+        break;
+      case BARN_DESTROYED:
+        barnColors.remove(record.getBarnId());
+        break;
+      case ANIMAL_ADDED:
+      case ANIMAL_MOVED:
+        animalBarns.put(record.getAnimalId(), record.getBarnId());
+        break;
+      case ANIMAL_REMOVED:
+        animalBarns.remove(record.getAnimalId());
+        break;
+      case ANIMALS_CLEARED:
+        animalBarns.clear();
+        break;
+      default:
+        throw new IllegalStateException(String.format("Unknown journal record %s.", record));
+    }
+    nextOffset = record.getOffset() + 1;
+  }
+
+  /**
+   * <p>
+   * Offset of the first record not replayed yet.
+   * </p>
+   * @return the next offset
+   */
+  public long getNextOffset() {
+    return nextOffset;
+  }
+
+  public Map<Long, Long> getAnimalBarns() {
+    return Collections.unmodifiableMap(animalBarns);
+  }
+
+  public Map<Long, Color> getBarnColors() {
+    return Collections.unmodifiableMap(barnColors);
+  }
+
+  /**
+   * <p>
+   * Number of animals housed in each barn, barns without animals included.
+   * </p>
+   * @return head count keyed by barn id
+   */
+  public Map<Long, Integer> headCounts() {
+    Map<Long, Integer> headCounts = new HashMap<>();
+    barnColors.keySet().forEach(barnId -> headCounts.put(barnId, 0));
+    animalBarns.values().forEach(barnId -> headCounts.merge(barnId, 1, Integer::sum));
+    return headCounts;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: JournalReplay <journal directory>");
+      System.exit(1);
+    }
+    // opened without fsync, nothing is appended
+    try (MoveJournal journal = new MoveJournal(Paths.get(args[0]), Integer.MAX_VALUE, false)) {
+      JournalReplay replay = replay(journal);
+      Map<Color, int[]> totals = new EnumMap<>(Color.class);
+      replay.headCounts().forEach((barnId, headCount) -> {
+        Color barnColor = replay.barnColors.get(barnId);
+        // barns built before the journal was started are only known by the animals moving through them
+        if (barnColor != null) {
+          int[] total = totals.computeIfAbsent(barnColor, color -> new int[2]);
+          total[0]++;
+          total[1] += headCount;
+        }
+      });
+      System.out.println(String.format("Replayed %d records.", replay.getNextOffset()));
+      totals.forEach((color, total) -> System.out.println(String.format("%s: %d barns, %d animals", color.name(),
+          total[0], total[1])));
+    }
+  }
+
+}
@@ -0,0 +1,193 @@
+package com.logicgate.farm.util;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Entity free counterpart of {@link BarnOrganizer} for very large colors.  Barns and animals are plain long ids in
+ * primitive arrays, barns are told apart by id alone, so no entity, boxed number or persistence context identity is
+ * involved.  A color of ten million animals costs the caller's id arrays plus one int per animal while laying out.
+ * </p>
+ *
+ * <p>
+ * The layout is the same as {@link BarnOrganizer#planMoves(java.util.Map, int)} produces: the most populated barns
+ * are kept and given the larger share of animals, the least populated ones are drained, and every animal above its
+ * barn's target moves to a barn below its target.
+ * </p>
+ */
+public final class LayoutEngine {
+
+  /**
+   * Barn id of an animal that doesn't have a barn yet.
+   */
+  public static final long NO_BARN = Long.MIN_VALUE;
+
+  /**
+   * <p>
+   * Plan the layout of a color from head counts alone.
+   * </p>
+   * @param barnIds the id of every barn of the color, including any newly built (empty) barns
+   * @param headCounts current population of each barn, by position in barnIds
+   * @param arrivalCount number of new animals that still need a barn
+   * @return the target population of every barn and the moves required to reach it
+   */
+  public static LayoutPlan plan(long[] barnIds, int[] headCounts, int arrivalCount) {
+
+    if (barnIds.length != headCounts.length) {
+      throw new IllegalArgumentException(String.format("%d barns were given with %d head counts.",
+          barnIds.length, headCounts.length));
+    }
+
+    long animalCount = arrivalCount;
+    for (int headCount : headCounts) {
+      animalCount += headCount;
+    }
+
+    int barnCount = BarnOrganizer.barnsRequired(animalCount);
+    if (barnCount > barnIds.length) {
+      throw new IllegalArgumentException(String.format("%d animals require %d barns, but only %d were given.",
+          animalCount, barnCount, barnIds.length));
+    }
+    int baseAnimalCount = barnCount == 0 ? 0 : (int) (animalCount / barnCount);
+    int remainingCount = (int) (animalCount - (long) barnCount * baseAnimalCount);
+
+    // order barns from the most to the least populated, ties keep the order they were given in
+    int[] ranking = rank(headCounts);
+
+    int[] targetCounts = new int[barnIds.length];
+    for (int rank = 0; rank < ranking.length; rank++) {
+      int targetCount = (rank < remainingCount) ? (baseAnimalCount + 1) : baseAnimalCount;
+      targetCounts[ranking[rank]] = (rank < barnCount) ? targetCount : 0;
+    }
+
+    // every move empties a source or fills a target, so there can't be more moves than barns plus the arrivals
+    int[] moveSources = new int[barnIds.length + 1];
+    int[] moveTargets = new int[barnIds.length + 1];
+    int[] moveCounts = new int[barnIds.length + 1];
+
+    // sources are the arrivals followed by every barn above its target, in the order they were given in
+    int[] sources = new int[barnIds.length + 1];
+    int[] surpluses = new int[barnIds.length + 1];
+    int sourceCount = 0;
+    if (arrivalCount > 0) {
+      sources[sourceCount] = LayoutPlan.ARRIVALS;
+      surpluses[sourceCount++] = arrivalCount;
+    }
+    for (int barn = 0; barn < barnIds.length; barn++) {
+      if (headCounts[barn] > targetCounts[barn]) {
+        sources[sourceCount] = barn;
+        surpluses[sourceCount++] = headCounts[barn] - targetCounts[barn];
+      }
+    }
+
+    // targets are filled from the most populated barn down
+    int moveCount = 0;
+    int sourceIndex = 0;
+    for (int barn : ranking) {
+      int needed = targetCounts[barn] - headCounts[barn];
+      while (needed > 0) {
+        int moved = Math.min(needed, surpluses[sourceIndex]);
+        moveSources[moveCount] = sources[sourceIndex];
+        moveTargets[moveCount] = barn;
+        moveCounts[moveCount++] = moved;
+        needed -= moved;
+        surpluses[sourceIndex] -= moved;
+        if (surpluses[sourceIndex] == 0) {
+          sourceIndex++;
+        }
+      }
+    }
+
+    return new LayoutPlan(barnIds, targetCounts, ranking, moveSources, moveTargets, moveCounts, moveCount);
+
+  }
+
+  /**
+   * <p>
+   * Lay out a color animal by animal.  Animals are reassigned in place, the ones that leave a barn are taken from
+   * the end of that barn's animals in array order.
+   * </p>
+   * @param barnIds the id of every barn of the color, including any newly built (empty) barns
+   * @param animalBarnIds the barn id of every animal of the color (parallel to the caller's animal ids), or
+   *                      {@link #NO_BARN} for animals that still need a barn; rewritten with the new barn ids
+   * @return the plan that was applied
+   */
+  public static LayoutPlan assign(long[] barnIds, long[] animalBarnIds) {
+
+    // barn ids sorted, with the position each one has in barnIds, to find barns without a map
+    long[] sortedBarnIds = barnIds.clone();
+    Arrays.sort(sortedBarnIds);
+    int[] barnPositions = new int[barnIds.length];
+    for (int barn = 0; barn < barnIds.length; barn++) {
+      barnPositions[Arrays.binarySearch(sortedBarnIds, barnIds[barn])] = barn;
+    }
+
+    // animals grouped by barn with a counting sort, arrivals in the extra last group
+    int arrivals = barnIds.length;
+    int[] groupEnds = new int[barnIds.length + 1];
+    int[] animalGroups = new int[animalBarnIds.length];
+    for (int animal = 0; animal < animalBarnIds.length; animal++) {
+      int group = groupOf(animalBarnIds[animal], sortedBarnIds, barnPositions, arrivals);
+      animalGroups[animal] = group;
+      groupEnds[group]++;
+    }
+    int[] headCounts = Arrays.copyOf(groupEnds, barnIds.length);
+    int arrivalCount = groupEnds[arrivals];
+    for (int group = 1; group < groupEnds.length; group++) {
+      groupEnds[group] += groupEnds[group - 1];
+    }
+    // fill every group from its end, so each group ends up in array order
+    int[] groupedAnimals = new int[animalBarnIds.length];
+    for (int animal = animalBarnIds.length - 1; animal >= 0; animal--) {
+      groupedAnimals[--groupEnds[animalGroups[animal]]] = animal;
+    }
+    // groupEnds now hold where each group starts, move on to where each one ends
+    int[] groupStarts = groupEnds;
+    int[] groupTails = new int[groupStarts.length];
+    for (int group = 0; group < groupStarts.length; group++) {
+      groupTails[group] = (group + 1 < groupStarts.length) ? groupStarts[group + 1] : animalBarnIds.length;
+    }
+
+    LayoutPlan plan = plan(barnIds, headCounts, arrivalCount);
+    for (int move = 0; move < plan.moveCount(); move++) {
+      int source = plan.moveSource(move) == LayoutPlan.ARRIVALS ? arrivals : plan.moveSource(move);
+      long targetBarnId = barnIds[plan.moveTarget(move)];
+      for (int i = 0; i < plan.moveAnimalCount(move); i++) {
+        animalBarnIds[groupedAnimals[--groupTails[source]]] = targetBarnId;
+      }
+    }
+    return plan;
+
+  }
+
+  // positions sorted by head count descending, ties in the order given, without boxing the positions
+  private static int[] rank(int[] headCounts) {
+    long[] keys = new long[headCounts.length];
+    for (int barn = 0; barn < headCounts.length; barn++) {
+      // the inverted count sorts descending in the high half, the position breaks ties in the low half
+      keys[barn] = ((long) (Integer.MAX_VALUE - headCounts[barn]) << 32) | barn;
+    }
+    Arrays.sort(keys);
+    int[] ranking = new int[headCounts.length];
+    for (int rank = 0; rank < keys.length; rank++) {
+      ranking[rank] = (int) keys[rank];
+    }
+    return ranking;
+  }
+
+  private static int groupOf(long barnId, long[] sortedBarnIds, int[] barnPositions, int arrivals) {
+    if (barnId == NO_BARN) {
+      return arrivals;
+    }
+    int index = Arrays.binarySearch(sortedBarnIds, barnId);
+    if (index < 0) {
+      throw new IllegalArgumentException(String.format("Animal is housed in unknown barn %d.", barnId));
+    }
+    return barnPositions[index];
+  }
+
+  private LayoutEngine() {
+
+  }
+
+}
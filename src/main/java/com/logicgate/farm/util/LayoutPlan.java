@@ -0,0 +1,95 @@
+package com.logicgate.farm.util;
+
+/**
+ * <p>
+ * A layout planned by {@link LayoutEngine}, held in primitive arrays.  Barns are addressed by their position in the
+ * array the plan was made from, moves by their position in the plan.
+ * </p>
+ */
+public final class LayoutPlan {
+
+  /**
+   * Source of a move that houses animals which have no barn yet.
+   */
+  public static final int ARRIVALS = -1;
+
+  private final long[] barnIds;
+
+  private final int[] targetCounts;
+
+  // barn positions from the most to the least populated, the order targets were handed out in
+  private final int[] ranking;
+
+  private final int[] moveSources;
+
+  private final int[] moveTargets;
+
+  private final int[] moveCounts;
+
+  private final int moveCount;
+
+  LayoutPlan(long[] barnIds, int[] targetCounts, int[] ranking, int[] moveSources, int[] moveTargets,
+             int[] moveCounts, int moveCount) {
+    this.barnIds = barnIds;
+    this.targetCounts = targetCounts;
+    this.ranking = ranking;
+    this.moveSources = moveSources;
+    this.moveTargets = moveTargets;
+    this.moveCounts = moveCounts;
+    this.moveCount = moveCount;
+  }
+
+  public int barnCount() {
+    return barnIds.length;
+  }
+
+  public long barnId(int barn) {
+    return barnIds[barn];
+  }
+
+  public int targetCount(int barn) {
+    return targetCounts[barn];
+  }
+
+  /**
+   * @param rank 0 for the most populated barn
+   * @return the position of the barn with the given rank
+   */
+  public int rankedBarn(int rank) {
+    return ranking[rank];
+  }
+
+  public int moveCount() {
+    return moveCount;
+  }
+
+  /**
+   * @param move the position of the move
+   * @return the position of the barn the animals leave, or {@link #ARRIVALS}
+   */
+  public int moveSource(int move) {
+    return moveSources[move];
+  }
+
+  public int moveTarget(int move) {
+    return moveTargets[move];
+  }
+
+  public int moveAnimalCount(int move) {
+    return moveCounts[move];
+  }
+
+  /**
+   * @return the number of already housed animals that change barns, arrivals not included
+   */
+  public long movedAnimalCount() {
+    long moved = 0;
+    for (int move = 0; move < moveCount; move++) {
+      if (moveSources[move] != ARRIVALS) {
+        moved += moveCounts[move];
+      }
+    }
+    return moved;
+  }
+
+}
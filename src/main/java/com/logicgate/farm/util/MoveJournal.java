@@ -0,0 +1,383 @@
+package com.logicgate.farm.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Append-only journal of {@link JournalRecord}s, split over segment files of a fixed number of records.  Every
+ * record is addressed by its offset, the number of records appended before it, and each segment is named after the
+ * offset of its first record so that any offset can be found without reading the segments before it.
+ * </p>
+ *
+ * <p>
+ * Appends are serialized and written straight to the current segment's channel.  With fsync enabled an append only
+ * returns once its records are on disk, and appends that arrive while the segment is being forced share the next
+ * force instead of each waiting for one of their own.  Readers and subscriptions only see records once they are on
+ * disk, so a record they were handed can't be lost to a crash and its offset reused by another.
+ * </p>
+ *
+ * <p>
+ * A journal that was cut short by a crash is truncated to its last whole record when it is opened again.
+ * </p>
+ */
+public class MoveJournal implements Closeable {
+
+  private static final String SEGMENT_SUFFIX = ".journal";
+
+  // records read from disk at a time by a subscription
+  private static final int READ_BATCH = 1024;
+
+  private static final AtomicInteger SUBSCRIPTION_COUNT = new AtomicInteger();
+
+  private final Path directory;
+
+  private final int segmentRecords;
+
+  private final boolean fsync;
+
+  // guards the current segment, the offsets below and the segment table, and is waited on by subscriptions
+  private final Object writeLock = new Object();
+
+  // held while forcing, so that appends waiting for a force can tell whether it covered them
+  private final Object syncLock = new Object();
+
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+  private FileChannel segment;
+
+  private long segmentStart;
+
+  private long endOffset;
+
+  // the end of what has been forced to disk, only moved on while holding writeLock
+  private volatile long durableOffset;
+
+  private volatile boolean closed;
+
+  public MoveJournal(Path directory, int segmentRecords, boolean fsync) throws IOException {
+    if (segmentRecords < 1) {
+      throw new IllegalArgumentException("A journal segment has to hold at least one record.");
+    }
+    this.directory = directory;
+    this.segmentRecords = segmentRecords;
+    this.fsync = fsync;
+
+    Files.createDirectories(directory);
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .forEach(file -> segments.put(segmentStart(file), file));
+    }
+
+    if (segments.isEmpty()) {
+      openSegment(0);
+    }
+    else {
+      Map.Entry<Long, Path> last = segments.lastEntry();
+      segmentStart = last.getKey();
+      segment = FileChannel.open(last.getValue(), StandardOpenOption.WRITE, StandardOpenOption.READ);
+      // a record that was only partly written when the process died is dropped
+      long records = segment.size() / JournalRecord.SIZE;
+      segment.truncate(records * JournalRecord.SIZE);
+      segment.position(records * JournalRecord.SIZE);
+      endOffset = segmentStart + records;
+    }
+    durableOffset = endOffset;
+  }
+
+  /**
+   * <p>
+   * Append records to the end of the journal, in the given order.
+   * </p>
+   * @param records the records to append
+   * @return the offset following the last appended record
+   */
+  public long append(List<JournalRecord> records) throws IOException {
+    long appendedEnd;
+    synchronized (writeLock) {
+      int written = 0;
+      while (written < records.size()) {
+        if (endOffset - segmentStart >= segmentRecords) {
+          rollSegment();
+        }
+        // as many records as the current segment still has room for, written in one go
+        int count = (int) Math.min(records.size() - written, segmentStart + segmentRecords - endOffset);
+        ByteBuffer buffer = ByteBuffer.allocate(count * JournalRecord.SIZE);
+        for (int i = written; i < written + count; i++) {
+          records.get(i).writeTo(buffer);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          segment.write(buffer);
+        }
+        written += count;
+        endOffset += count;
+      }
+      appendedEnd = endOffset;
+      writeLock.notifyAll();
+    }
+    if (fsync) {
+      sync(appendedEnd);
+    }
+    return appendedEnd;
+  }
+
+  /**
+   * <p>
+   * The offset the next appended record will get, i.e. the number of records in the journal.
+   * </p>
+   * @return the end of the journal
+   */
+  public long getEndOffset() {
+    synchronized (writeLock) {
+      return endOffset;
+    }
+  }
+
+  /**
+   * <p>
+   * Read records from the journal, starting at the given offset.  Fewer records than asked for are returned when
+   * the end of the journal or of a segment is reached.  With fsync enabled the journal ends at the last record that
+   * is on disk.
+   * </p>
+   * @param fromOffset offset of the first record to read
+   * @param maxRecords the most records to read
+   * @return the records read, in offset order
+   */
+  public List<JournalRecord> read(long fromOffset, int maxRecords) throws IOException {
+    Path segmentFile;
+    long start;
+    long end;
+    synchronized (writeLock) {
+      long readableOffset = readableOffset();
+      if (fromOffset >= readableOffset) {
+        return Collections.emptyList();
+      }
+      Map.Entry<Long, Path> entry = segments.floorEntry(fromOffset);
+      if (entry == null) {
+        throw new IllegalArgumentException(String.format("Offset %d is before the start of the journal.",
+            fromOffset));
+      }
+      segmentFile = entry.getValue();
+      start = entry.getKey();
+      // segments written with another segment size still end where the next one starts
+      Long nextStart = segments.higherKey(start);
+      end = nextStart == null ? readableOffset : Math.min(nextStart, readableOffset);
+    }
+
+    int count = (int) Math.min(maxRecords, end - fromOffset);
+    ByteBuffer buffer = ByteBuffer.allocate(count * JournalRecord.SIZE);
+    try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+      long position = (fromOffset - start) * JournalRecord.SIZE;
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new IllegalStateException(String.format("Journal segment %s is cut short.", segmentFile));
+        }
+      }
+    }
+    buffer.flip();
+
+    List<JournalRecord> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      records.add(JournalRecord.readFrom(buffer, fromOffset + i));
+    }
+    return records;
+  }
+
+  /**
+   * <p>
+   * Follow the journal from the given offset on a thread of its own, handing every record to the consumer in offset
+   * order, first those already in the journal and then each one as it is appended.  A consumer that throws ends its
+   * subscription.
+   * </p>
+   * @param fromOffset offset of the first record to hand out, e.g. {@link Subscription#getNextOffset()} of an
+   *                   earlier subscription
+   * @param consumer receives the records
+   * @return the running subscription, to be closed when no longer needed
+   */
+  public Subscription subscribe(long fromOffset, Consumer<JournalRecord> consumer) {
+    Subscription subscription = new Subscription(fromOffset, consumer);
+    subscription.thread.start();
+    return subscription;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (writeLock) {
+      closed = true;
+      if (fsync) {
+        segment.force(false);
+        durableOffset = endOffset;
+      }
+      segment.close();
+      writeLock.notifyAll();
+    }
+  }
+
+  // force everything appended so far, unless a force that started after the given offset was written covered it
+  private void sync(long offset) throws IOException {
+    synchronized (syncLock) {
+      if (durableOffset >= offset) {
+        return;
+      }
+      FileChannel channel;
+      long target;
+      synchronized (writeLock) {
+        channel = segment;
+        target = endOffset;
+      }
+      try {
+        channel.force(false);
+      }
+      catch (ClosedChannelException e) {
+        // the segment was rolled over in the meantime, which forces it before closing it
+      }
+      synchronized (writeLock) {
+        // a roll over may have moved it further in the meantime
+        durableOffset = Math.max(durableOffset, target);
+        writeLock.notifyAll();
+      }
+    }
+  }
+
+  private void rollSegment() throws IOException {
+    if (fsync) {
+      segment.force(false);
+      durableOffset = endOffset;
+    }
+    segment.close();
+    openSegment(endOffset);
+  }
+
+  private void openSegment(long start) throws IOException {
+    Path file = directory.resolve(String.format("%020d%s", start, SEGMENT_SUFFIX));
+    segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    segmentStart = start;
+    segments.put(start, file);
+  }
+
+  private static long segmentStart(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  // the end of what readers may see, records that could still be lost to a crash are left out with fsync enabled
+  private long readableOffset() {
+    return fsync ? durableOffset : endOffset;
+  }
+
+  // wait until records past the given offset can be read, or the timeout has passed
+  private void awaitAppend(long offset, long timeoutMillis) throws InterruptedException {
+    synchronized (writeLock) {
+      if (readableOffset() <= offset && !closed) {
+        writeLock.wait(timeoutMillis);
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * A consumer following the journal, see {@link #subscribe(long, Consumer)}.
+   * </p>
+   */
+  public final class Subscription implements Closeable {
+
+    // longest a subscription sleeps before checking again for appends it may have missed
+    private static final long POLL_MILLIS = 1000;
+
+    private final Consumer<JournalRecord> consumer;
+
+    private final Thread thread;
+
+    private volatile long nextOffset;
+
+    private volatile boolean running = true;
+
+    private volatile Exception failure;
+
+    private Subscription(long fromOffset, Consumer<JournalRecord> consumer) {
+      this.nextOffset = fromOffset;
+      this.consumer = consumer;
+      this.thread = new Thread(this::tail, "journal-subscription-" + SUBSCRIPTION_COUNT.incrementAndGet());
+      this.thread.setDaemon(true);
+    }
+
+    /**
+     * <p>
+     * Offset of the next record this subscription will hand out, every record before it has been consumed.
+     * </p>
+     * @return the next offset
+     */
+    public long getNextOffset() {
+      return nextOffset;
+    }
+
+    public boolean isRunning() {
+      return running;
+    }
+
+    /**
+     * <p>
+     * Why the subscription stopped on its own, if it did.
+     * </p>
+     * @return the failure of the consumer or of the journal, null while running or after a close
+     */
+    public Exception getFailure() {
+      return failure;
+    }
+
+    @Override
+    public void close() {
+      running = false;
+      thread.interrupt();
+    }
+
+    private void tail() {
+      try {
+        while (running && !closed) {
+          List<JournalRecord> records = read(nextOffset, READ_BATCH);
+          if (records.isEmpty()) {
+            awaitAppend(nextOffset, POLL_MILLIS);
+          }
+          for (JournalRecord record : records) {
+            consumer.accept(record);
+            nextOffset = record.getOffset() + 1;
+          }
+        }
+      }
+      catch (InterruptedException e) {
+        // closed
+      }
+      catch (IOException e) {
+        fail(new UncheckedIOException(e));
+      }
+      catch (RuntimeException e) {
+        fail(e);
+      }
+    }
+
+    private void fail(Exception e) {
+      if (running) {
+        failure = e;
+        running = false;
+      }
+    }
+
+  }
+
+}
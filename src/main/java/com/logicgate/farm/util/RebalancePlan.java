@@ -0,0 +1,54 @@
+package com.logicgate.farm.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * The outcome of planning a color's layout from head counts alone: the population every barn should end up with
+ * and the moves required to get there.  Barns with a target population of zero are drained and can be destroyed.
+ * </p>
+ */
+public class RebalancePlan {
+
+  private final Map<Long, Integer> targetCounts;
+
+  private final List<BarnMove> moves;
+
+  public RebalancePlan(Map<Long, Integer> targetCounts, List<BarnMove> moves) {
+    this.targetCounts = Collections.unmodifiableMap(targetCounts);
+    this.moves = Collections.unmodifiableList(moves);
+  }
+
+  public Map<Long, Integer> getTargetCounts() {
+    return targetCounts;
+  }
+
+  public List<BarnMove> getMoves() {
+    return moves;
+  }
+
+  /**
+   * <p>
+   * Number of already housed animals that change barns, i.e. the update statements the plan will cost.
+   * Newly arriving animals are not counted, they have to be inserted either way.
+   * </p>
+   * @return the number of relocated animals
+   */
+  public int getMovedAnimalCount() {
+    return moves.stream()
+        .filter(move -> !move.isArrival())
+        .mapToInt(BarnMove::getAnimalCount)
+        .sum();
+  }
+
+  public List<Long> getDrainedBarnIds() {
+    return targetCounts.entrySet().stream()
+      .filter(entry -> entry.getValue() == 0)
+      .map(Map.Entry::getKey)
+      .collect(Collectors.toList());
+  }
+
+}
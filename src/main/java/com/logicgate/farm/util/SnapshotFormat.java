@@ -0,0 +1,38 @@
+package com.logicgate.farm.util;
+
+/**
+ * <p>
+ * Layout of a farm snapshot file.  A fixed size header is followed by every barn and then every animal, each
+ * written as a record of primitive fields in big endian order.
+ * </p>
+ *
+ * <p>
+ *    header  magic (int), version (int), barn count (long), animal count (long), animal offset (long),
+ *            CRC32 of everything after the header (long)
+ *    barn    id (long), color ordinal (byte), capacity (int), name
+ *    animal  id (long), color ordinal (byte), barn id (long), name
+ *    name    length in UTF-8 bytes (unsigned short, NULL_NAME when absent) followed by the bytes
+ * </p>
+ */
+final class SnapshotFormat {
+
+  // "FARM"
+  static final int MAGIC = 0x4641524D;
+
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 4;
+
+  static final int NULL_NAME = 0xFFFF;
+
+  static final int MAX_NAME_LENGTH = NULL_NAME - 1;
+
+  static final int BARN_RECORD_SIZE = Long.BYTES + Byte.BYTES + Integer.BYTES + Short.BYTES;
+
+  static final int ANIMAL_RECORD_SIZE = Long.BYTES + Byte.BYTES + Long.BYTES + Short.BYTES;
+
+  private SnapshotFormat() {
+
+  }
+
+}
@@ -0,0 +1,176 @@
+package com.logicgate.farm.util;
+
+import com.logicgate.farm.domain.Color;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Reads a farm snapshot written by {@link SnapshotWriter}.  The file is memory mapped and its checksum verified
+ * when the reader is opened, records are then decoded straight from the mapping and handed to a visitor one at a
+ * time, so reading a snapshot never holds more than a single record on the heap.
+ * </p>
+ *
+ * <p>
+ * Barns and animals can each be read any number of times, e.g. once to check the layout and once to load it.
+ * </p>
+ */
+public class SnapshotReader implements Closeable {
+
+  private static final Color[] COLORS = Color.values();
+
+  private final Path source;
+
+  private final FileChannel channel;
+
+  private final MappedByteBuffer mapping;
+
+  private final long barnCount;
+
+  private final long animalCount;
+
+  private final int animalOffset;
+
+  public SnapshotReader(Path source) throws IOException {
+    this.source = source;
+    this.channel = FileChannel.open(source, StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size < SnapshotFormat.HEADER_SIZE) {
+        throw corrupt("it is shorter than its header");
+      }
+      if (size > Integer.MAX_VALUE) {
+        throw new IllegalStateException(String.format("Snapshot %s is too large to be mapped.", source));
+      }
+      this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      if (mapping.getInt() != SnapshotFormat.MAGIC) {
+        throw corrupt("it is not a farm snapshot");
+      }
+      int version = mapping.getInt();
+      if (version != SnapshotFormat.VERSION) {
+        throw corrupt(String.format("version %d is not supported", version));
+      }
+      this.barnCount = mapping.getLong();
+      this.animalCount = mapping.getLong();
+      long offset = mapping.getLong();
+      if (offset < SnapshotFormat.HEADER_SIZE || offset > size) {
+        throw corrupt("its animal offset is out of bounds");
+      }
+      this.animalOffset = (int) offset;
+      long expectedChecksum = mapping.getLong();
+
+      CRC32 checksum = new CRC32();
+      checksum.update(body(SnapshotFormat.HEADER_SIZE, (int) size));
+      if (checksum.getValue() != expectedChecksum) {
+        throw corrupt("its checksum does not match");
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public long getBarnCount() {
+    return barnCount;
+  }
+
+  public long getAnimalCount() {
+    return animalCount;
+  }
+
+  public void readBarns(BarnVisitor visitor) {
+    ByteBuffer barns = body(SnapshotFormat.HEADER_SIZE, animalOffset);
+    try {
+      for (long i = 0; i < barnCount; i++) {
+        long id = barns.getLong();
+        Color color = color(barns.get());
+        int capacity = barns.getInt();
+        visitor.visit(id, name(barns), color, capacity);
+      }
+    }
+    catch (BufferUnderflowException e) {
+      throw corrupt("its barns are cut short");
+    }
+    if (barns.hasRemaining()) {
+      throw corrupt("it holds more barns than its header counts");
+    }
+  }
+
+  public void readAnimals(AnimalVisitor visitor) {
+    ByteBuffer animals = body(animalOffset, mapping.limit());
+    try {
+      for (long i = 0; i < animalCount; i++) {
+        long id = animals.getLong();
+        Color color = color(animals.get());
+        long barnId = animals.getLong();
+        visitor.visit(id, name(animals), color, barnId);
+      }
+    }
+    catch (BufferUnderflowException e) {
+      throw corrupt("its animals are cut short");
+    }
+    if (animals.hasRemaining()) {
+      throw corrupt("it holds more animals than its header counts");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    // the mapping itself is released once it is garbage collected
+    channel.close();
+  }
+
+  // an independent view of part of the mapping, so that concurrent or repeated reads don't share a position
+  private ByteBuffer body(int from, int to) {
+    ByteBuffer body = mapping.duplicate();
+    body.limit(to).position(from);
+    return body;
+  }
+
+  private Color color(byte ordinal) {
+    if (ordinal < 0 || ordinal >= COLORS.length) {
+      throw corrupt(String.format("color %d is unknown", ordinal));
+    }
+    return COLORS[ordinal];
+  }
+
+  private static String name(ByteBuffer records) {
+    int length = Short.toUnsignedInt(records.getShort());
+    if (length == SnapshotFormat.NULL_NAME) {
+      return null;
+    }
+    byte[] nameBytes = new byte[length];
+    records.get(nameBytes);
+    return new String(nameBytes, StandardCharsets.UTF_8);
+  }
+
+  private IllegalStateException corrupt(String reason) {
+    return new IllegalStateException(String.format("Snapshot %s is corrupt, %s.", source, reason));
+  }
+
+  @FunctionalInterface
+  public interface BarnVisitor {
+
+    void visit(long id, String name, Color color, int capacity);
+
+  }
+
+  @FunctionalInterface
+  public interface AnimalVisitor {
+
+    void visit(long id, String name, Color color, long barnId);
+
+  }
+
+}
@@ -0,0 +1,179 @@
+package com.logicgate.farm.util;
+
+import com.logicgate.farm.domain.Color;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Writes a farm snapshot, see {@link SnapshotFormat}.  Records are gathered in a direct buffer and written to the
+ * file channel a buffer at a time, the checksum is kept up to date as each buffer goes out.
+ * </p>
+ *
+ * <p>
+ * The snapshot is written next to its target and only moved into place by {@link #commit()}, so a writer that is
+ * closed without committing (e.g. after a failure) leaves any previous snapshot untouched.  {@link #finish()}
+ * completes the file without moving it, for callers that only commit once their own transaction has.
+ * </p>
+ */
+public class SnapshotWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final Path target;
+
+  private final Path partial;
+
+  private final FileChannel channel;
+
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  private final CRC32 checksum = new CRC32();
+
+  private long barnCount;
+
+  private long animalCount;
+
+  private long animalOffset = SnapshotFormat.HEADER_SIZE;
+
+  private long size;
+
+  private boolean finished;
+
+  private boolean committed;
+
+  public SnapshotWriter(Path target) throws IOException {
+    this.target = target;
+    this.partial = target.resolveSibling(target.getFileName() + ".partial");
+    this.channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE);
+    this.channel.position(SnapshotFormat.HEADER_SIZE);
+  }
+
+  public void writeBarn(long id, String name, Color color, int capacity) throws IOException {
+    if (animalCount > 0) {
+      throw new IllegalStateException("Barns have to be written before any animal.");
+    }
+    byte[] nameBytes = encode(name);
+    ensureRoom(SnapshotFormat.BARN_RECORD_SIZE + nameBytes.length);
+    buffer.putLong(id).put((byte) color.ordinal()).putInt(capacity);
+    putName(name, nameBytes);
+    barnCount++;
+  }
+
+  public void writeAnimal(long id, String name, Color color, long barnId) throws IOException {
+    byte[] nameBytes = encode(name);
+    ensureRoom(SnapshotFormat.ANIMAL_RECORD_SIZE + nameBytes.length);
+    if (animalCount == 0) {
+      animalOffset = channel.position() + buffer.position();
+    }
+    buffer.putLong(id).put((byte) color.ordinal()).putLong(barnId);
+    putName(name, nameBytes);
+    animalCount++;
+  }
+
+  /**
+   * <p>
+   * Write out the header and force the snapshot to disk, leaving it next to its target.
+   * </p>
+   */
+  public void finish() throws IOException {
+    drain();
+    if (animalCount == 0) {
+      animalOffset = channel.position();
+    }
+    ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.HEADER_SIZE)
+        .putInt(SnapshotFormat.MAGIC)
+        .putInt(SnapshotFormat.VERSION)
+        .putLong(barnCount)
+        .putLong(animalCount)
+        .putLong(animalOffset)
+        .putLong(checksum.getValue());
+    header.flip();
+    long position = 0;
+    while (header.hasRemaining()) {
+      position += channel.write(header, position);
+    }
+    channel.force(false);
+    size = channel.size();
+    channel.close();
+    finished = true;
+  }
+
+  /**
+   * <p>
+   * Move the snapshot into place, replacing any previous one, finishing it first if need be.
+   * </p>
+   */
+  public void commit() throws IOException {
+    if (!finished) {
+      finish();
+    }
+    Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    committed = true;
+  }
+
+  public long getBarnCount() {
+    return barnCount;
+  }
+
+  public long getAnimalCount() {
+    return animalCount;
+  }
+
+  // bytes in the snapshot, once finished
+  public long getSize() {
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!committed) {
+      channel.close();
+      Files.deleteIfExists(partial);
+    }
+  }
+
+  private void ensureRoom(int recordSize) throws IOException {
+    if (buffer.remaining() < recordSize) {
+      drain();
+    }
+  }
+
+  // write out everything buffered so far, adding it to the checksum on the way
+  private void drain() throws IOException {
+    buffer.flip();
+    checksum.update(buffer.duplicate());
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void putName(String name, byte[] nameBytes) {
+    buffer.putShort((short) (name == null ? SnapshotFormat.NULL_NAME : nameBytes.length));
+    buffer.put(nameBytes);
+  }
+
+  private static byte[] encode(String name) {
+    if (name == null) {
+      return new byte[0];
+    }
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > SnapshotFormat.MAX_NAME_LENGTH) {
+      throw new IllegalArgumentException(String.format("Name of %d bytes is too long for a snapshot.",
+          nameBytes.length));
+    }
+    return nameBytes;
+  }
+
+}
@@ -0,0 +1,105 @@
+package com.logicgate.farm.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicgate.farm.config.FarmProperties;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.service.AnimalService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Streaming bulk ingest of newline-delimited JSON animals, e.g. {"name":"Animal-1","favoriteColor":"RED"}.
+ * </p>
+ *
+ * <p>
+ * The upload is parsed incrementally and handed to the service one chunk at a time.  Nothing more is read from
+ * the request until the previous chunk has been written, so a client sending faster than the farm can house its
+ * animals is held back by the connection itself and memory use stays at a single chunk whatever the upload size.
+ * Chunks are committed as they go, an upload that fails part way keeps the chunks written before the failure.
+ * </p>
+ *
+ * <p>
+ * The response is always the {@link IngestSummary} of what was written.  A malformed line stops the upload with a
+ * 400 and the summary names the line, so a client can resume after the animals the summary counts.  An upload that
+ * was read to the end but had colors fail to write is answered with a 422.
+ * </p>
+ */
+@RestController
+@RequestMapping("/animals")
+public class AnimalIngestController {
+
+  public static final String NDJSON = "application/x-ndjson";
+
+  private final AnimalService animalService;
+
+  private final FarmProperties farmProperties;
+
+  private final ObjectMapper objectMapper;
+
+  @Autowired
+  public AnimalIngestController(AnimalService animalService, FarmProperties farmProperties,
+                                ObjectMapper objectMapper) {
+    this.animalService = animalService;
+    this.farmProperties = farmProperties;
+    this.objectMapper = objectMapper;
+  }
+
+  @PostMapping(path = "/stream", consumes = NDJSON)
+  public ResponseEntity<IngestSummary> ingest(InputStream body) throws IOException {
+
+    long start = System.currentTimeMillis();
+    int chunkSize = farmProperties.getIngest().getStreamChunkSize();
+    IngestSummary summary = new IngestSummary();
+
+    try (MappingIterator<AnimalPayload> payloads = objectMapper.readerFor(AnimalPayload.class).readValues(body)) {
+      List<Animal> chunk = new ArrayList<>(chunkSize);
+      while (payloads.hasNextValue()) {
+        AnimalPayload payload = payloads.nextValue();
+        if (payload.getName() == null || payload.getFavoriteColor() == null) {
+          return rejected(summary, start, payloads.getCurrentLocation().getLineNr(),
+              "The animal needs a name and a favorite color.");
+        }
+        chunk.add(payload.toAnimal());
+        if (chunk.size() >= chunkSize) {
+          // blocks until written, the client waits on the connection in the meantime
+          summary.add(animalService.ingestToFarm(chunk));
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+      if (!chunk.isEmpty()) {
+        summary.add(animalService.ingestToFarm(chunk));
+      }
+    }
+    catch (JsonProcessingException e) {
+      return rejected(summary, start, e.getLocation() == null ? 0 : e.getLocation().getLineNr(),
+          e.getOriginalMessage());
+    }
+
+    summary.setElapsedMillis(System.currentTimeMillis() - start);
+    // every line was read, but the animals of a color that failed were not housed
+    return ResponseEntity.status(summary.getFailedCount() > 0 ? HttpStatus.UNPROCESSABLE_ENTITY : HttpStatus.OK)
+        .body(summary);
+
+  }
+
+  // stop at a malformed line, reporting what the chunks before it committed
+  private static ResponseEntity<IngestSummary> rejected(IngestSummary summary, long start, int lineNumber,
+                                                        String error) {
+    summary.reject(lineNumber, error);
+    summary.setElapsedMillis(System.currentTimeMillis() - start);
+    return ResponseEntity.badRequest().body(summary);
+  }
+
+}
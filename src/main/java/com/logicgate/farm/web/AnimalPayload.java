@@ -0,0 +1,35 @@
+package com.logicgate.farm.web;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+
+/**
+ * A single animal as it is uploaded, one JSON object per line.
+ */
+public class AnimalPayload {
+
+  private String name;
+
+  private Color favoriteColor;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public Color getFavoriteColor() {
+    return favoriteColor;
+  }
+
+  public void setFavoriteColor(Color favoriteColor) {
+    this.favoriteColor = favoriteColor;
+  }
+
+  public Animal toAnimal() {
+    return new Animal(name, favoriteColor);
+  }
+
+}
@@ -0,0 +1,40 @@
+package com.logicgate.farm.web;
+
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.service.ColorStats;
+import com.logicgate.farm.service.FarmStats;
+import com.logicgate.farm.service.FarmStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * <p>
+ * Farm statistics for dashboards, served from the barn_occupancy summary, e.g. GET /stats or GET /stats/RED.  The
+ * same stats are published as the farmstats actuator endpoint.
+ * </p>
+ */
+@RestController
+@RequestMapping("/stats")
+public class FarmStatsController {
+
+  private final FarmStatsService farmStatsService;
+
+  @Autowired
+  public FarmStatsController(FarmStatsService farmStatsService) {
+    this.farmStatsService = farmStatsService;
+  }
+
+  @GetMapping
+  public FarmStats stats() {
+    return farmStatsService.getStats();
+  }
+
+  @GetMapping("/{color}")
+  public ColorStats stats(@PathVariable("color") Color color) {
+    return farmStatsService.getStats(color);
+  }
+
+}
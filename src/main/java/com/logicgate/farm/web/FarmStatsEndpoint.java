@@ -0,0 +1,29 @@
+package com.logicgate.farm.web;
+
+import com.logicgate.farm.service.FarmStats;
+import com.logicgate.farm.service.FarmStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * The farm's statistics as an actuator endpoint (/actuator/farmstats), next to the farm.* meters.
+ */
+@Component
+@Endpoint(id = "farmstats")
+public class FarmStatsEndpoint {
+
+  private final FarmStatsService farmStatsService;
+
+  @Autowired
+  public FarmStatsEndpoint(FarmStatsService farmStatsService) {
+    this.farmStatsService = farmStatsService;
+  }
+
+  @ReadOperation
+  public FarmStats stats() {
+    return farmStatsService.getStats();
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.logicgate.farm.web;
+
+import com.logicgate.farm.service.IngestResult;
+
+import java.util.List;
+
+/**
+ * Running totals of a streamed upload, returned once the whole upload has been consumed or a malformed line stopped
+ * it.  The counts only cover chunks handed to the service, animals read after the last of them were not written.
+ */
+public class IngestSummary {
+
+  private long acceptedCount;
+
+  private long failedCount;
+
+  private long barnsCreated;
+
+  private long elapsedMillis;
+
+  private Integer rejectedLine;
+
+  private String error;
+
+  public void add(List<IngestResult> results) {
+    for (IngestResult result : results) {
+      if (result.isSucceeded()) {
+        acceptedCount += result.getAnimalCount();
+        barnsCreated += result.getBarnsCreated();
+      }
+      else {
+        failedCount += result.getAnimalCount();
+      }
+    }
+  }
+
+  public void reject(int lineNumber, String error) {
+    this.rejectedLine = lineNumber;
+    this.error = error;
+  }
+
+  public long getAcceptedCount() {
+    return acceptedCount;
+  }
+
+  public long getFailedCount() {
+    return failedCount;
+  }
+
+  public long getBarnsCreated() {
+    return barnsCreated;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public void setElapsedMillis(long elapsedMillis) {
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  // the line that stopped the upload, null if it was read to the end
+  public Integer getRejectedLine() {
+    return rejectedLine;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+}
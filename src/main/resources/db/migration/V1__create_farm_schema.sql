@@ -0,0 +1,28 @@
+-- the schema as it was generated from the entity classes before migrations were introduced
+
+create sequence animal_seq start with 1 increment by 50;
+
+create sequence barn_seq start with 1 increment by 50;
+
+create table barn (
+  id bigint not null,
+  name varchar(255),
+  color integer,
+  capacity integer,
+  primary key (id)
+);
+
+create table animal (
+  id bigint not null,
+  name varchar(255),
+  favorite_color integer,
+  barn_id bigint,
+  primary key (id),
+  constraint fk_animal_barn foreign key (barn_id) references barn (id)
+);
+
+create table color_partition (
+  color integer not null,
+  layout_version bigint,
+  primary key (color)
+);
@@ -0,0 +1,7 @@
+-- animals of a color and the barn each one lives in, read from the index alone
+create index animal_color_barn_idx on animal (favorite_color, barn_id);
+
+-- animals of a barn in id order, for picking the animals that have to move
+create index animal_barn_idx on animal (barn_id, id);
+
+create index barn_color_idx on barn (color);
@@ -0,0 +1,14 @@
+-- head count of every barn, written in the same transaction as every animal insert, move and delete
+create table barn_occupancy (
+  barn_id bigint not null,
+  color integer not null,
+  head_count integer not null,
+  primary key (barn_id),
+  constraint fk_barn_occupancy_barn foreign key (barn_id) references barn (id) on delete cascade
+);
+
+create index barn_occupancy_color_idx on barn_occupancy (color, head_count);
+
+insert into barn_occupancy (barn_id, color, head_count)
+  select b.id, b.color, (select count(*) from animal a where a.barn_id = b.id)
+  from barn b;
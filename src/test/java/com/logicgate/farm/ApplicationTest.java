@@ -1,10 +1,13 @@
 package com.logicgate.farm;
 
 import com.logicgate.farm.domain.Animal;
-import com.logicgate.farm.domain.Barn;
-import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.AnimalSummary;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
 import com.logicgate.farm.repository.BarnRepository;
 import com.logicgate.farm.service.AnimalService;
+import com.logicgate.farm.service.AsyncAnimalService;
+import com.logicgate.farm.service.IngestResult;
 import com.logicgate.farm.util.FarmUtils;
 
 import org.junit.After;
@@ -14,18 +17,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.greaterThan;
-import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
-import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 @SpringBootTest
 @RunWith(SpringRunner.class)
@@ -33,12 +33,21 @@ public class ApplicationTest {
 
   private static final int ANIMAL_SEED = 1000;
 
+  @Autowired
+  private AnimalRepository animalRepository;
+
   @Autowired
   private BarnRepository barnRepository;
 
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
   @Autowired
   private AnimalService animalService;
 
+  @Autowired
+  private AsyncAnimalService asyncAnimalService;
+
   @After
   public void tearDown() {
     animalService.deleteAll();
@@ -54,6 +63,49 @@ public class ApplicationTest {
     checkAnimals(ANIMAL_SEED);
   }
 
+  @Test
+  public void addAnimalsToFarmIndividually() {
+    IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .forEach(animalService::addToFarm);
+
+    checkAnimals(ANIMAL_SEED);
+  }
+
+  @Test
+  public void ingestAnimalsToFarm() {
+    List<IngestResult> results = animalService.ingestToFarm(IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList()));
+
+    assertThat("Every color should be ingested.", results.stream().allMatch(IngestResult::isSucceeded), is(true));
+    assertThat("Every animal should be reported.", results.stream().mapToInt(IngestResult::getAnimalCount).sum(),
+        is(ANIMAL_SEED));
+
+    checkAnimals(ANIMAL_SEED);
+  }
+
+  @Test
+  public void streamAnimalsFromFarm() {
+    animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList()));
+
+    List<Animal> animals = animalService.streamAll().collect(Collectors.toList());
+    assertThat("Every animal should be streamed.", animals.size(), is(ANIMAL_SEED));
+    assertThat("Animals should be streamed in id order, each exactly once.",
+        animals.stream().map(Animal::getId).distinct().sorted().collect(Collectors.toList()),
+        is(animals.stream().map(Animal::getId).collect(Collectors.toList())));
+    assertThat("Streamed animals should come with their barn.",
+        animals.stream().allMatch(animal -> animal.getBarn().getColor() == animal.getFavoriteColor()), is(true));
+
+    Map<Long, Long> barnIds = animals.stream()
+        .collect(Collectors.toMap(Animal::getId, animal -> animal.getBarn().getId()));
+    Map<Long, Long> summaryBarnIds = animalService.streamAllSummaries()
+        .collect(Collectors.toMap(AnimalSummary::getId, AnimalSummary::getBarnId));
+    assertThat("Summaries should match the streamed animals.", summaryBarnIds, is(barnIds));
+  }
+
   @Test
   public void removeAnimalsFromFarm() {
     animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
@@ -70,43 +122,28 @@ public class ApplicationTest {
     checkAnimals(animals.size() - animalsToRemove.size());
   }
 
+  @Test
+  public void updateFarmAsynchronously() {
+    List<CompletableFuture<Animal>> additions = IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> asyncAnimalService.addToFarm(
+            new Animal(FarmUtils.animalName(value), FarmUtils.randomColor())))
+        .collect(Collectors.toList());
+    List<Animal> animals = additions.stream().map(CompletableFuture::join).collect(Collectors.toList());
+
+    List<Animal> animalsToRemove = animals.stream()
+        .filter(animal -> ThreadLocalRandom.current().nextBoolean())
+        .collect(Collectors.toList());
+    animalsToRemove.stream()
+        .map(asyncAnimalService::removeFromFarm)
+        .collect(Collectors.toList())
+        .forEach(CompletableFuture::join);
+
+    checkAnimals(animals.size() - animalsToRemove.size());
+  }
+
   private void checkAnimals(int expected) {
-    List<Animal> animalResult = animalService.findAll();
-    assertThat("Animal updates should reflect in persisted entities.", animalResult.size(), is(expected));
-
-    Map<Barn, List<Animal>> barnAnimalMap = animalResult.stream()
-        .collect(Collectors.groupingBy(Animal::getBarn));
-
-    barnAnimalMap.forEach((barn, animals) -> {
-      assertThat("Barns should not exceed capacity.", barn.getCapacity(), greaterThanOrEqualTo(animals.size()));
-      assertThat("Animals should match the barn color.",
-          animals.stream().anyMatch(animal -> animal.getFavoriteColor() != barn.getColor()), is(false));
-    });
-
-    // no unused barns
-    assertThat("No barns should be empty.", barnRepository.count(), is((long) barnAnimalMap.keySet().size()));
-
-    Map<Color, List<Barn>> colorBarnMap = barnAnimalMap.keySet().stream()
-        .collect(Collectors.groupingBy(Barn::getColor));
-
-    colorBarnMap.forEach((color, barns) -> {
-      Integer minCapacity = barns.stream()
-          .mapToInt(Barn::getCapacity).min()
-          .orElse(FarmUtils.barnCapacity());
-
-      List<Integer> unusedCapacity = barns.stream()
-          .map(barn -> barn.getCapacity() - barnAnimalMap.get(barn).size())
-          .collect(Collectors.toList());
-
-      Integer totalUnusedCapacity = unusedCapacity.stream()
-          .mapToInt(i -> i)
-          .sum();
-
-      assertThat("Optimal barns should exist for capacity requirements.",
-          minCapacity, greaterThan(totalUnusedCapacity));
-      assertThat("Animal distribution should maximize free barn space.",
-          Collections.max(unusedCapacity) - Collections.min(unusedCapacity), lessThanOrEqualTo(1));
-    });
+    FarmInvariants.checkAnimals(animalService, barnRepository, expected);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
   }
 
 }
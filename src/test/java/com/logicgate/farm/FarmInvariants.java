@@ -0,0 +1,85 @@
+package com.logicgate.farm;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnHeadCount;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.service.AnimalService;
+import com.logicgate.farm.util.FarmUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * The rules every farm has to obey once its writers are done, whatever the workload that built it.
+ */
+public final class FarmInvariants {
+
+  public static void checkAnimals(AnimalService animalService, BarnRepository barnRepository, int expected) {
+    List<Animal> animalResult = animalService.findAll();
+    assertThat("Animal updates should reflect in persisted entities.", animalResult.size(), is(expected));
+
+    Map<Barn, List<Animal>> barnAnimalMap = animalResult.stream()
+        .collect(Collectors.groupingBy(Animal::getBarn));
+
+    barnAnimalMap.forEach((barn, animals) -> {
+      assertThat("Barns should not exceed capacity.", barn.getCapacity(), greaterThanOrEqualTo(animals.size()));
+      assertThat("Animals should match the barn color.",
+          animals.stream().anyMatch(animal -> animal.getFavoriteColor() != barn.getColor()), is(false));
+    });
+
+    // no unused barns
+    assertThat("No barns should be empty.", barnRepository.count(), is((long) barnAnimalMap.keySet().size()));
+
+    Map<Color, List<Barn>> colorBarnMap = barnAnimalMap.keySet().stream()
+        .collect(Collectors.groupingBy(Barn::getColor));
+
+    colorBarnMap.forEach((color, barns) -> {
+      Integer minCapacity = barns.stream()
+          .mapToInt(Barn::getCapacity).min()
+          .orElse(FarmUtils.barnCapacity());
+
+      List<Integer> unusedCapacity = barns.stream()
+          .map(barn -> barn.getCapacity() - barnAnimalMap.get(barn).size())
+          .collect(Collectors.toList());
+
+      Integer totalUnusedCapacity = unusedCapacity.stream()
+          .mapToInt(i -> i)
+          .sum();
+
+      assertThat("Optimal barns should exist for capacity requirements.",
+          minCapacity, greaterThan(totalUnusedCapacity));
+      assertThat("Animal distribution should maximize free barn space.",
+          Collections.max(unusedCapacity) - Collections.min(unusedCapacity), lessThanOrEqualTo(1));
+    });
+  }
+
+  public static void checkOccupancy(AnimalRepository animalRepository, BarnRepository barnRepository,
+                                    BarnOccupancyRepository occupancyRepository) {
+    Map<Long, Long> headCounts = animalRepository.countAnimalsByBarn().stream()
+        .collect(Collectors.toMap(BarnHeadCount::getBarnId, BarnHeadCount::getHeadCount));
+    Map<Long, Long> occupancies = occupancyRepository.findHeadCounts().stream()
+        .collect(Collectors.toMap(BarnHeadCount::getBarnId, headCount -> headCount.getHeadCount().longValue()));
+
+    assertThat("Every barn should have its occupancy maintained.", occupancies.keySet(),
+        is(barnRepository.findAll().stream().map(Barn::getId).collect(Collectors.toSet())));
+    occupancies.forEach((barnId, headCount) -> assertThat("Occupancy should match the animals housed.",
+        headCount, is(headCounts.getOrDefault(barnId, 0L))));
+  }
+
+  private FarmInvariants() {
+
+  }
+
+}
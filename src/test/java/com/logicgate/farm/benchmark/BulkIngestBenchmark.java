@@ -0,0 +1,74 @@
+package com.logicgate.farm.benchmark;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.service.AnimalService;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Measures rows/sec for a large bulk load through {@link AnimalService#addToFarm(List)} with batched inserts.
+ * Skipped unless run with {@code -Dfarm.benchmark=true}, the size is set with {@code -Dfarm.benchmark.animals}.
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class BulkIngestBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BulkIngestBenchmark.class);
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Benchmarks only run with -Dfarm.benchmark=true", Boolean.getBoolean("farm.benchmark"));
+  }
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAllInBatch();
+  }
+
+  @Test
+  public void bulkIngest() {
+    int animalCount = Integer.getInteger("farm.benchmark.animals", 1_000_000);
+    List<Animal> animals = IntStream.range(0, animalCount)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList());
+
+    long start = System.nanoTime();
+    animalService.addToFarm(animals);
+    double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+
+    LOG.info(String.format("%s ingested %d animals in %.2fs (%.0f rows/sec)",
+        getClass().getSimpleName(), animalCount, seconds, animalCount / seconds));
+
+    assertThat("Every animal should be persisted.", animalRepository.count(), is((long) animalCount));
+  }
+
+}
@@ -0,0 +1,21 @@
+package com.logicgate.farm.benchmark;
+
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * The same bulk load with JDBC batching and periodic flushing turned off, as the point of comparison for
+ * {@link BulkIngestBenchmark}.  It still places every color with a single planning pass, so it measures what
+ * batching buys rather than the animal-by-animal ingest it replaced.
+ */
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.jdbc.batch_size=1",
+    "spring.jpa.properties.hibernate.order_inserts=false",
+    "spring.jpa.properties.hibernate.order_updates=false",
+    "farm.ingest.flush-size=0"
+})
+@RunWith(SpringRunner.class)
+public class UnbatchedBulkIngestBenchmark extends BulkIngestBenchmark {
+
+}
@@ -0,0 +1,39 @@
+package com.logicgate.farm.load;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every latency of one operation type, so that percentiles are exact rather than estimated.
+ */
+public class LatencyRecorder {
+
+  private long[] latencies = new long[1024];
+
+  private int count;
+
+  public synchronized void record(long nanos) {
+    if (count == latencies.length) {
+      latencies = Arrays.copyOf(latencies, count * 2);
+    }
+    latencies[count++] = nanos;
+  }
+
+  public synchronized int count() {
+    return count;
+  }
+
+  /**
+   * @param percentile between 0 and 100, e.g. 99.9
+   * @return the latency in nanoseconds that the given share of operations didn't exceed, 0 when nothing was recorded
+   */
+  public synchronized long percentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(latencies, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100 * count);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+}
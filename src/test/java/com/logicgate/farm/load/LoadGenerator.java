@@ -0,0 +1,87 @@
+package com.logicgate.farm.load;
+
+import com.logicgate.farm.domain.Color;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Draws operations from a profile.  Colors follow a zipf distribution, so that with a positive skew the first colors
+ * are hot and the last ones are cold, which is where contention on the color locks shows up.
+ */
+public class LoadGenerator {
+
+  private final LoadProfile profile;
+
+  private final Random random;
+
+  // cumulative probability of each color, by ordinal
+  private final double[] colorDistribution;
+
+  private final int totalWeight;
+
+  public LoadGenerator(LoadProfile profile, long seed) {
+    this.profile = profile;
+    this.random = new Random(seed);
+
+    Color[] colors = Color.values();
+    colorDistribution = new double[colors.length];
+    double sum = 0;
+    for (int i = 0; i < colors.length; i++) {
+      sum += 1 / Math.pow(i + 1, profile.getSkew());
+      colorDistribution[i] = sum;
+    }
+    for (int i = 0; i < colors.length; i++) {
+      colorDistribution[i] /= sum;
+    }
+
+    int weights = 0;
+    for (LoadOperation.Type type : LoadOperation.Type.values()) {
+      weights += profile.weight(type);
+    }
+    totalWeight = weights;
+  }
+
+  public LoadOperation next() {
+    LoadOperation.Type type = nextType();
+    Map<Color, Integer> counts = new EnumMap<>(Color.class);
+    switch (type) {
+      case ADD:
+        counts.put(nextColor(), 1);
+        break;
+      case BULK_ADD:
+        int bulkSize = 1 + random.nextInt(profile.getBulkSize());
+        for (int i = 0; i < bulkSize; i++) {
+          counts.merge(nextColor(), 1, Integer::sum);
+        }
+        break;
+      default:
+        counts.put(nextColor(), 1 + random.nextInt(profile.getRemoveSize()));
+        break;
+    }
+    return new LoadOperation(type, counts);
+  }
+
+  private LoadOperation.Type nextType() {
+    int draw = random.nextInt(totalWeight);
+    for (LoadOperation.Type type : LoadOperation.Type.values()) {
+      draw -= profile.weight(type);
+      if (draw < 0) {
+        return type;
+      }
+    }
+    throw new IllegalStateException("Operation weights changed while drawing.");
+  }
+
+  private Color nextColor() {
+    double draw = random.nextDouble();
+    for (int i = 0; i < colorDistribution.length; i++) {
+      if (draw < colorDistribution[i]) {
+        return Color.values()[i];
+      }
+    }
+    return Color.values()[colorDistribution.length - 1];
+  }
+
+}
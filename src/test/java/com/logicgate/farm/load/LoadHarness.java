@@ -0,0 +1,164 @@
+package com.logicgate.farm.load;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.service.AnimalService;
+import com.logicgate.farm.util.FarmUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Drives an {@link AnimalService} with generated or recorded operations and measures every call.
+ * </p>
+ *
+ * <p>
+ * Every executed operation is appended to the trace once it has completed, an add before its animals can be picked
+ * for removal and a removal only after the service returned.  So for every color, each prefix of the trace never
+ * removes more animals than it added, and replaying the trace on a single thread always executes the same calls
+ * and ends with the same number of animals per color as the run that recorded it.  Removals take the longest housed
+ * animals of their color first.
+ * </p>
+ */
+public class LoadHarness {
+
+  private final AnimalService animalService;
+
+  // animals housed by this harness, oldest first, each handed to at most one removal
+  private final Map<Color, Queue<Animal>> housed = new EnumMap<>(Color.class);
+
+  private final Map<LoadOperation.Type, LatencyRecorder> latencies = new EnumMap<>(LoadOperation.Type.class);
+
+  private final List<LoadOperation> trace = Collections.synchronizedList(new ArrayList<>());
+
+  private final AtomicInteger animalNames = new AtomicInteger();
+
+  public LoadHarness(AnimalService animalService) {
+    this.animalService = animalService;
+    for (Color color : Color.values()) {
+      housed.put(color, new ConcurrentLinkedQueue<>());
+    }
+    for (LoadOperation.Type type : LoadOperation.Type.values()) {
+      latencies.put(type, new LatencyRecorder());
+    }
+  }
+
+  /**
+   * @param profile the shape of the load, each caller draws its own operations from a seed derived from the profile
+   * @return throughput, latencies and the trace of the run
+   */
+  public LoadReport run(LoadProfile profile) throws InterruptedException {
+    ExecutorService callers = Executors.newFixedThreadPool(profile.getThreads());
+    try {
+      long start = System.nanoTime();
+      List<Future<?>> pendingCallers = new ArrayList<>();
+      for (int caller = 0; caller < profile.getThreads(); caller++) {
+        LoadGenerator generator = new LoadGenerator(profile, profile.getSeed() + caller);
+        // spread the remainder over the first callers
+        int operations = profile.getOperations() / profile.getThreads()
+            + (caller < profile.getOperations() % profile.getThreads() ? 1 : 0);
+        pendingCallers.add(callers.submit(() -> {
+          for (int i = 0; i < operations; i++) {
+            execute(generator.next());
+          }
+        }));
+      }
+      for (Future<?> pendingCaller : pendingCallers) {
+        pendingCaller.get();
+      }
+      return report(System.nanoTime() - start);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("Load caller failed.", e.getCause());
+    }
+    finally {
+      callers.shutdownNow();
+    }
+  }
+
+  /**
+   * @param recorded a trace written by an earlier run, executed in order on the calling thread
+   * @return throughput, latencies and the trace of the replay, which matches the recorded one
+   */
+  public LoadReport replay(List<LoadOperation> recorded) {
+    long start = System.nanoTime();
+    recorded.forEach(this::execute);
+    return report(System.nanoTime() - start);
+  }
+
+  private void execute(LoadOperation operation) {
+    switch (operation.getType()) {
+      case ADD:
+        operation.getCounts().keySet().forEach(color -> {
+          Animal animal = newAnimal(color);
+          time(operation, () -> animalService.addToFarm(animal));
+          housed.get(color).add(animal);
+        });
+        break;
+      case BULK_ADD:
+        List<Animal> animals = new ArrayList<>();
+        operation.getCounts().forEach((color, count) -> {
+          for (int i = 0; i < count; i++) {
+            animals.add(newAnimal(color));
+          }
+        });
+        time(operation, () -> animalService.addToFarm(animals));
+        animals.forEach(animal -> housed.get(animal.getFavoriteColor()).add(animal));
+        break;
+      default:
+        remove(operation);
+        break;
+    }
+  }
+
+  private void remove(LoadOperation operation) {
+    Map<Color, Integer> counts = new EnumMap<>(Color.class);
+    List<Animal> animals = new ArrayList<>();
+    operation.getCounts().forEach((color, count) -> {
+      Animal animal;
+      while (counts.getOrDefault(color, 0) < count && (animal = housed.get(color).poll()) != null) {
+        animals.add(animal);
+        counts.merge(color, 1, Integer::sum);
+      }
+    });
+    if (animals.isEmpty()) {
+      // nothing of this color is housed yet, so there is nothing to remove or record
+      return;
+    }
+    LoadOperation removal = new LoadOperation(LoadOperation.Type.REMOVE, counts);
+    if (animals.size() == 1) {
+      time(removal, () -> animalService.removeFromFarm(animals.get(0)));
+    }
+    else {
+      time(removal, () -> animalService.removeFromFarm(animals));
+    }
+  }
+
+  private void time(LoadOperation operation, Runnable call) {
+    long start = System.nanoTime();
+    call.run();
+    latencies.get(operation.getType()).record(System.nanoTime() - start);
+    trace.add(operation);
+  }
+
+  private Animal newAnimal(Color color) {
+    return new Animal(FarmUtils.animalName(animalNames.getAndIncrement()), color);
+  }
+
+  private LoadReport report(long elapsedNanos) {
+    int housedCount = housed.values().stream().mapToInt(Queue::size).sum();
+    return new LoadReport(latencies, new ArrayList<>(trace), elapsedNanos, housedCount);
+  }
+
+}
@@ -0,0 +1,70 @@
+package com.logicgate.farm.load;
+
+import com.logicgate.farm.domain.Color;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A single call into the service, as generated or as read back from a trace.  A trace line is the operation type
+ * followed by the number of animals per color, e.g. {@code BULK_ADD RED=3,BLUE=2}.
+ */
+public final class LoadOperation {
+
+  private final Type type;
+
+  private final Map<Color, Integer> counts;
+
+  public LoadOperation(Type type, Map<Color, Integer> counts) {
+    this.type = type;
+    this.counts = Collections.unmodifiableMap(new EnumMap<>(counts));
+  }
+
+  public static LoadOperation parse(String line) {
+    String[] parts = line.trim().split("\\s+");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException(String.format("Malformed trace line '%s'.", line));
+    }
+    Map<Color, Integer> counts = new EnumMap<>(Color.class);
+    for (String colorCount : parts[1].split(",")) {
+      String[] pair = colorCount.split("=");
+      counts.merge(Color.valueOf(pair[0]), Integer.parseInt(pair[1]), Integer::sum);
+    }
+    return new LoadOperation(Type.valueOf(parts[0]), counts);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Map<Color, Integer> getCounts() {
+    return counts;
+  }
+
+  public int getAnimalCount() {
+    return counts.values().stream().mapToInt(Integer::intValue).sum();
+  }
+
+  public String toTraceLine() {
+    return type.name() + " " + counts.entrySet().stream()
+        .map(count -> count.getKey().name() + "=" + count.getValue())
+        .collect(Collectors.joining(","));
+  }
+
+  @Override
+  public String toString() {
+    return toTraceLine();
+  }
+
+  public enum Type {
+    // a single animal through addToFarm(Animal)
+    ADD,
+    // a batch of animals of any colors through addToFarm(List)
+    BULK_ADD,
+    // housed animals through removeFromFarm, a single animal or a batch
+    REMOVE
+  }
+
+}
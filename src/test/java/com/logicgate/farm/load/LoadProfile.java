@@ -0,0 +1,98 @@
+package com.logicgate.farm.load;
+
+/**
+ * <p>
+ * Shape of a generated load, read from {@code farm.load.*} system properties with small defaults, e.g.
+ * {@code -Dfarm.load.threads=32 -Dfarm.load.operations=100000 -Dfarm.load.skew=1.2}.
+ * </p>
+ *
+ * <ul>
+ *   <li>threads - number of concurrent callers</li>
+ *   <li>operations - operations issued by all callers together</li>
+ *   <li>mix - relative weights of single adds, bulk adds and removes, e.g. 60,10,30</li>
+ *   <li>bulk-size, remove-size - most animals in a bulk add and in a removal</li>
+ *   <li>skew - zipf exponent of the color popularity, 0 picks every color equally often</li>
+ *   <li>seed - seed of the generator, the same seed gives every caller the same sequence of operations</li>
+ * </ul>
+ */
+public final class LoadProfile {
+
+  private final int threads;
+
+  private final int operations;
+
+  private final int[] mix;
+
+  private final int bulkSize;
+
+  private final int removeSize;
+
+  private final double skew;
+
+  private final long seed;
+
+  public LoadProfile(int threads, int operations, int[] mix, int bulkSize, int removeSize, double skew, long seed) {
+    if (mix.length != LoadOperation.Type.values().length) {
+      throw new IllegalArgumentException(String.format("The mix needs a weight for each of %d operation types.",
+          LoadOperation.Type.values().length));
+    }
+    this.threads = threads;
+    this.operations = operations;
+    this.mix = mix.clone();
+    this.bulkSize = bulkSize;
+    this.removeSize = removeSize;
+    this.skew = skew;
+    this.seed = seed;
+  }
+
+  public static LoadProfile fromSystemProperties() {
+    String[] weights = System.getProperty("farm.load.mix", "60,10,30").split(",");
+    int[] mix = new int[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      mix[i] = Integer.parseInt(weights[i].trim());
+    }
+    return new LoadProfile(
+        Integer.getInteger("farm.load.threads", 8),
+        Integer.getInteger("farm.load.operations", 800),
+        mix,
+        Integer.getInteger("farm.load.bulk-size", 50),
+        Integer.getInteger("farm.load.remove-size", 5),
+        Double.parseDouble(System.getProperty("farm.load.skew", "1.0")),
+        Long.getLong("farm.load.seed", 42L));
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getOperations() {
+    return operations;
+  }
+
+  public int weight(LoadOperation.Type type) {
+    return mix[type.ordinal()];
+  }
+
+  public int getBulkSize() {
+    return bulkSize;
+  }
+
+  public int getRemoveSize() {
+    return removeSize;
+  }
+
+  public double getSkew() {
+    return skew;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LoadProfile[threads=%d, operations=%d, mix=%d/%d/%d, bulkSize=%d, removeSize=%d, "
+        + "skew=%.2f, seed=%d]", threads, operations, mix[0], mix[1], mix[2], bulkSize, removeSize, skew, seed);
+  }
+
+}
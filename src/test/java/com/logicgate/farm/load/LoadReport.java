@@ -0,0 +1,59 @@
+package com.logicgate.farm.load;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a load run: throughput, latency percentiles per operation type and the trace of what was executed.
+ */
+public class LoadReport {
+
+  private final Map<LoadOperation.Type, LatencyRecorder> latencies;
+
+  private final List<LoadOperation> trace;
+
+  private final long elapsedNanos;
+
+  private final int housedCount;
+
+  public LoadReport(Map<LoadOperation.Type, LatencyRecorder> latencies, List<LoadOperation> trace, long elapsedNanos,
+                    int housedCount) {
+    this.latencies = new EnumMap<>(latencies);
+    this.trace = trace;
+    this.elapsedNanos = elapsedNanos;
+    this.housedCount = housedCount;
+  }
+
+  public List<LoadOperation> getTrace() {
+    return trace;
+  }
+
+  public int getHousedCount() {
+    return housedCount;
+  }
+
+  public double getThroughput() {
+    return trace.size() / (elapsedNanos / 1_000_000_000d);
+  }
+
+  public long percentile(LoadOperation.Type type, double percentile) {
+    return latencies.get(type).percentile(percentile);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder report = new StringBuilder(String.format("%d operations in %.2fs (%.0f ops/sec), %d animals housed",
+        trace.size(), elapsedNanos / 1_000_000_000d, getThroughput(), housedCount));
+    latencies.forEach((type, recorder) -> report.append(String.format("%n  %-8s %7d ops  p50 %8.2fms  p99 %8.2fms"
+        + "  p999 %8.2fms", type.name(), recorder.count(), millis(recorder.percentile(50)),
+        millis(recorder.percentile(99)), millis(recorder.percentile(99.9)))));
+    return report.toString();
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+}
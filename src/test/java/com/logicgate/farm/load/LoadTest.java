@@ -0,0 +1,127 @@
+package com.logicgate.farm.load;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.AnimalSummary;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.service.AnimalService;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * <p>
+ * Concurrent end to end load against the service, followed by the same invariant checks as {@code ApplicationTest}.
+ * The default load is small enough for every build, it is scaled with the {@code farm.load.*} properties of
+ * {@link LoadProfile}.
+ * </p>
+ *
+ * <p>
+ * {@code -Dfarm.load.record=trace.txt} writes the trace of the concurrent run, and
+ * {@code -Dfarm.load.replay=trace.txt} replays a recorded trace on a single thread.
+ * </p>
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class LoadTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadTest.class);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void concurrentLoadKeepsFarmInvariants() throws Exception {
+    LoadProfile profile = LoadProfile.fromSystemProperties();
+    LoadReport report = new LoadHarness(animalService).run(profile);
+    LOG.info(String.format("%s%n%s", profile, report));
+
+    String recordPath = System.getProperty("farm.load.record");
+    if (recordPath != null) {
+      LoadTrace.write(Paths.get(recordPath), profile.toString(), report.getTrace());
+    }
+
+    FarmInvariants.checkAnimals(animalService, barnRepository, report.getHousedCount());
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  @Test
+  public void replayedTraceRebuildsTheSameFarm() throws Exception {
+    LoadProfile profile = LoadProfile.fromSystemProperties();
+    LoadReport recorded = new LoadHarness(animalService).run(profile);
+    Map<Color, Long> recordedCounts = countAnimalsByColor();
+
+    Path tracePath = temporaryFolder.newFile("trace.txt").toPath();
+    LoadTrace.write(tracePath, profile.toString(), recorded.getTrace());
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+
+    List<LoadOperation> trace = LoadTrace.read(tracePath);
+    LoadReport replayed = new LoadHarness(animalService).replay(trace);
+
+    assertThat("The replay should execute the recorded operations.", replayed.getTrace().stream()
+        .map(LoadOperation::toTraceLine).collect(Collectors.toList()), is(recorded.getTrace().stream()
+        .map(LoadOperation::toTraceLine).collect(Collectors.toList())));
+    assertThat("The replay should house the same animals of every color.", countAnimalsByColor(),
+        is(recordedCounts));
+    FarmInvariants.checkAnimals(animalService, barnRepository, replayed.getHousedCount());
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  @Test
+  public void replayRecordedTrace() throws Exception {
+    String replayPath = System.getProperty("farm.load.replay");
+    Assume.assumeTrue("Replays only run with -Dfarm.load.replay=<trace>", replayPath != null);
+
+    LoadReport report = new LoadHarness(animalService).replay(LoadTrace.read(Paths.get(replayPath)));
+    LOG.info(String.format("Replayed %s%n%s", replayPath, report));
+
+    FarmInvariants.checkAnimals(animalService, barnRepository, report.getHousedCount());
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  // counted from the summaries of every shard
+  private Map<Color, Long> countAnimalsByColor() {
+    return animalService.streamAllSummaries()
+        .collect(Collectors.groupingBy(AnimalSummary::getFavoriteColor, Collectors.counting()));
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.logicgate.farm.load;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes operation traces, one operation per line in the order the operations completed.  Lines starting
+ * with # are comments.
+ */
+public final class LoadTrace {
+
+  public static void write(Path path, String comment, List<LoadOperation> trace) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writer.write("# " + comment);
+      writer.newLine();
+      for (LoadOperation operation : trace) {
+        writer.write(operation.toTraceLine());
+        writer.newLine();
+      }
+    }
+  }
+
+  public static List<LoadOperation> read(Path path) throws IOException {
+    List<LoadOperation> trace = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty() && !line.startsWith("#")) {
+          trace.add(LoadOperation.parse(line));
+        }
+      }
+    }
+    return trace;
+  }
+
+  private LoadTrace() {
+
+  }
+
+}
@@ -0,0 +1,86 @@
+package com.logicgate.farm.repository;
+
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class BarnRepositoryTest {
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private CacheManager cacheManager;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @After
+  public void tearDown() {
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void barnsByColorAreCached() {
+    Barn redBarn = barnRepository.save(new Barn(FarmUtils.barnName(Color.RED, 1), Color.RED));
+
+    List<Barn> barns = barnRepository.findBarnsByColor(Color.RED);
+    assertThat("Barns of a color should be read from the database.", barns, contains(redBarn));
+    assertThat("The barns of a color should be cached once read.", barnsByColor().get(Color.RED), notNullValue());
+    List<Barn> cachedBarns = barnRepository.findBarnsByColor(Color.RED);
+    assertThat("A second lookup should find the same barns.", cachedBarns, contains(redBarn));
+    assertThat("Every lookup should be handed a list of its own.", cachedBarns, not(sameInstance(barns)));
+    assertThat("Every lookup should be handed barns of its own.", cachedBarns.get(0), not(sameInstance(barns.get(0))));
+  }
+
+  @Test
+  public void barnChangesEvictOnlyTheirColor() {
+    Barn redBarn = barnRepository.save(new Barn(FarmUtils.barnName(Color.RED, 1), Color.RED));
+    barnRepository.findBarnsByColor(Color.RED);
+    barnRepository.findBarnsByColor(Color.BLUE);
+
+    Barn secondRedBarn = barnRepository.save(new Barn(FarmUtils.barnName(Color.RED, 2), Color.RED));
+    assertThat("Building a barn should evict its color.", barnsByColor().get(Color.RED), nullValue());
+    assertThat("Building a barn should not evict other colors.", barnsByColor().get(Color.BLUE), notNullValue());
+    assertThat("The new barn should be found once evicted.", barnRepository.findBarnsByColor(Color.RED),
+        containsInAnyOrder(redBarn, secondRedBarn));
+
+    new TransactionTemplate(transactionManager).execute(status ->
+        barnRepository.deleteBarnsByIds(Color.RED, Collections.singletonList(redBarn.getId())));
+    assertThat("Destroying a barn should evict its color.", barnsByColor().get(Color.RED), nullValue());
+    assertThat("The destroyed barn should be gone once evicted.",
+        barnRepository.findBarnsByColor(Color.RED).stream().map(Barn::getId).collect(Collectors.toList()),
+        is(Collections.singletonList(secondRedBarn.getId())));
+  }
+
+  private Cache barnsByColor() {
+    return cacheManager.getCache(BarnRepository.BARNS_BY_COLOR);
+  }
+
+}
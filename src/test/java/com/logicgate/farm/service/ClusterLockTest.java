@@ -0,0 +1,126 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.Application;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnHeadCount;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Two application nodes sharing one file based H2 database, writing the same colors at the same time.
+ */
+public class ClusterLockTest {
+
+  private static final File DATABASE_DIRECTORY = new File("build/cluster-lock-test");
+
+  private static final String DATABASE_URL = "jdbc:h2:file:./build/cluster-lock-test/farm;LOCK_TIMEOUT=30000";
+
+  private static final Color[] COLORS = {Color.RED, Color.BLUE};
+
+  private static final int ANIMALS_PER_WRITER = 100;
+
+  private static final int WRITERS_PER_NODE = 4;
+
+  private ConfigurableApplicationContext firstNode;
+
+  private ConfigurableApplicationContext secondNode;
+
+  @Before
+  public void setUp() {
+    FileSystemUtils.deleteRecursively(DATABASE_DIRECTORY);
+    firstNode = startNode();
+    secondNode = startNode();
+  }
+
+  @After
+  public void tearDown() {
+    secondNode.close();
+    firstNode.close();
+    FileSystemUtils.deleteRecursively(DATABASE_DIRECTORY);
+  }
+
+  @Test
+  public void nodesShareColorLocks() throws Exception {
+    ExecutorService writers = Executors.newFixedThreadPool(WRITERS_PER_NODE * 2);
+    List<Future<?>> pendingWrites = new ArrayList<>();
+    for (int i = 0; i < WRITERS_PER_NODE; i++) {
+      pendingWrites.add(writers.submit(() -> addAnimals(firstNode.getBean(AnimalService.class))));
+      pendingWrites.add(writers.submit(() -> addAnimals(secondNode.getBean(AnimalService.class))));
+    }
+    for (Future<?> pendingWrite : pendingWrites) {
+      pendingWrite.get();
+    }
+    writers.shutdown();
+
+    AnimalRepository animalRepository = firstNode.getBean(AnimalRepository.class);
+    BarnRepository barnRepository = firstNode.getBean(BarnRepository.class);
+    int expectedPerColor = ANIMALS_PER_WRITER * WRITERS_PER_NODE * 2 / COLORS.length;
+
+    assertThat("Every animal should be persisted.", animalRepository.count(),
+        is((long) ANIMALS_PER_WRITER * WRITERS_PER_NODE * 2));
+
+    for (Color color : COLORS) {
+      List<Integer> headCounts = animalRepository.countAnimalsByBarn(color).stream()
+          .map(headCount -> headCount.getHeadCount().intValue())
+          .collect(Collectors.toList());
+
+      assertThat("Animals should all be housed.", headCounts.stream().mapToInt(Integer::intValue).sum(),
+          is(expectedPerColor));
+      assertThat("Barns should not exceed capacity.", Collections.max(headCounts),
+          lessThanOrEqualTo(FarmUtils.barnCapacity()));
+      assertThat("Optimal barns should exist for capacity requirements.", headCounts.size(),
+          is((expectedPerColor + FarmUtils.barnCapacity() - 1) / FarmUtils.barnCapacity()));
+      assertThat("Animal distribution should maximize free barn space.",
+          Collections.max(headCounts) - Collections.min(headCounts), lessThanOrEqualTo(1));
+    }
+
+    Map<Long, Long> housedBarns = animalRepository.countAnimalsByBarn().stream()
+        .collect(Collectors.toMap(BarnHeadCount::getBarnId, BarnHeadCount::getHeadCount));
+    assertThat("No barns should be empty.", barnRepository.count(), is((long) housedBarns.size()));
+  }
+
+  private void addAnimals(AnimalService animalService) {
+    for (int i = 0; i < ANIMALS_PER_WRITER; i++) {
+      animalService.addToFarm(new Animal(FarmUtils.animalName(i), COLORS[i % COLORS.length]));
+    }
+  }
+
+  private static ConfigurableApplicationContext startNode() {
+    return new SpringApplicationBuilder(Application.class)
+        .web(WebApplicationType.NONE)
+        .properties(
+            "spring.datasource.url=" + DATABASE_URL,
+            "spring.jmx.enabled=false",
+            "spring.main.banner-mode=off",
+            // both nodes run in this JVM and would otherwise share one cache manager
+            "spring.cache.type=none",
+            "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+            "farm.locking.mode=database")
+        .run();
+  }
+
+}
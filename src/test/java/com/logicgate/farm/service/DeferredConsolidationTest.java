@@ -0,0 +1,126 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.BarnOrganizer;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Removals are deferred, a color is only consolidated in the background once 20 of its removals are pending.
+ */
+@SpringBootTest(properties = {
+    "farm.consolidation.deferred=true",
+    "farm.consolidation.max-delay-millis=60000",
+    "farm.consolidation.max-pending-changes=20"})
+@RunWith(SpringRunner.class)
+public class DeferredConsolidationTest {
+
+  private static final int ANIMAL_SEED = 1000;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @Autowired
+  private FarmConsolidator farmConsolidator;
+
+  @Autowired
+  private FarmStatsService farmStatsService;
+
+  @After
+  public void tearDown() {
+    for (Color color : Color.values()) {
+      animalService.consolidate(color);
+    }
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void removalsWaitForConsolidation() {
+    animalService.addToFarm(animals(Color.RED, 200));
+    long barnCount = barnRepository.count();
+
+    List<Animal> departures = animalService.findAll().subList(0, 15);
+    departures.forEach(animalService::removeFromFarm);
+
+    assertThat("Removals should not destroy barns.", barnRepository.count(), is(barnCount));
+    assertThat("Removals should be pending.", farmConsolidator.getPendingChanges(Color.RED), is(15));
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+
+    animalService.consolidate(Color.RED);
+
+    assertThat("Consolidation should clear the pending removals.", farmConsolidator.isDirty(Color.RED), is(false));
+    FarmInvariants.checkAnimals(animalService, barnRepository, 185);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  @Test
+  public void pendingRemovalsAreConsolidatedInTheBackground() throws Exception {
+    animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList()));
+    List<Animal> animals = animalService.findAll();
+    // far more than 20 removals of every color
+    animalService.removeFromFarm(animals.subList(0, ANIMAL_SEED * 3 / 4));
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!consolidated() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    FarmInvariants.checkAnimals(animalService, barnRepository, ANIMAL_SEED / 4);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  @Test
+  public void additionsStayWithinCapacity() {
+    animalService.addToFarm(animals(Color.BLUE, 100));
+    animalService.removeFromFarm(animalService.findAll().subList(0, 15));
+    // the barns still hold gaps the deferred removals left, the new animals have to fill them without overflowing
+    animalService.addToFarm(animals(Color.BLUE, 25));
+
+    FarmInvariants.checkAnimals(animalService, barnRepository, 110);
+  }
+
+  // every color in as few barns as it needs, spread evenly, as read from the occupancy summary
+  private boolean consolidated() {
+    return farmStatsService.getStats().getColors().stream().allMatch(stats ->
+        stats.getBarnCount() == BarnOrganizer.barnsRequired(stats.getAnimalCount())
+            && (stats.getOccupancyHistogram().isEmpty()
+                || stats.getOccupancyHistogram().lastKey() - stats.getOccupancyHistogram().firstKey() <= 1));
+  }
+
+  private static List<Animal> animals(Color color, int count) {
+    return IntStream.range(0, count)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), color))
+        .collect(Collectors.toList());
+  }
+
+}
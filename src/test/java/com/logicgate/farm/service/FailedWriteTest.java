@@ -0,0 +1,125 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.BarnOccupancyIndex;
+import com.logicgate.farm.util.FarmUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * A write that fails while another writer of its color is queued behind it.
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class FailedWriteTest {
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @SpyBean
+  private BarnOccupancyIndex occupancyIndex;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void nextWriterReloadsAfterRollback() throws Exception {
+    // a slow invalidation leaves a wide gap for the queued writer, should the lock be released ahead of it
+    doAnswer(invocation -> {
+      Thread.sleep(200);
+      return invocation.callRealMethod();
+    }).when(occupancyIndex).invalidate(Color.RED);
+    long reloads = reloadCount();
+
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch queued = new CountDownLatch(1);
+    ExecutorService writers = Executors.newFixedThreadPool(2);
+    // builds the color's first barn, then rolls it back along with the animal
+    Future<?> failedWrite = writers.submit(() -> new TransactionTemplate(transactionManager).execute(status -> {
+      animalService.addToFarm(new Animal(FarmUtils.animalName(0), Color.RED));
+      locked.countDown();
+      awaitQuietly(queued);
+      throw new IllegalStateException("Write failed on purpose.");
+    }));
+    locked.await();
+    Future<Animal> nextWrite = writers.submit(() -> animalService.addToFarm(
+        new Animal(FarmUtils.animalName(1), Color.RED)));
+    while (meterRegistry.get("farm.lock.queued").tag("color", "red").gauge().value() < 1) {
+      Thread.yield();
+    }
+    queued.countDown();
+
+    try {
+      failedWrite.get();
+      fail("The first write should have rolled back.");
+    }
+    catch (Exception e) {
+      // expected
+    }
+    nextWrite.get();
+    writers.shutdown();
+
+    assertThat("The next writer should reload the color the failed write left behind.", reloadCount() - reloads,
+        is(1L));
+    FarmInvariants.checkAnimals(animalService, barnRepository, 1);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  private long reloadCount() {
+    Timer reloads = meterRegistry.find("farm.operation.phase").tag("phase", "reload").tag("color", "red").timer();
+    return reloads == null ? 0 : reloads.count();
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
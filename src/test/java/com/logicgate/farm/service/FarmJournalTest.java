@@ -0,0 +1,104 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.FarmUtils;
+import com.logicgate.farm.util.JournalRecord;
+import com.logicgate.farm.util.JournalReplay;
+import com.logicgate.farm.util.MoveJournal;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@SpringBootTest(properties = {
+    "farm.journal.enabled=true",
+    "farm.journal.directory=build/farm-journal-test/${random.uuid}",
+    "farm.journal.segment-records=500",
+    "farm.journal.fsync=false"})
+@RunWith(SpringRunner.class)
+public class FarmJournalTest {
+
+  private static final int ANIMAL_SEED = 1000;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private FarmJournal farmJournal;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void replayMatchesFarm() throws Exception {
+    // the farm is empty, so replaying from here rebuilds all of it
+    long startOffset = farmJournal.getEndOffset();
+
+    animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList()));
+    List<Animal> animals = animalService.findAll();
+    animalService.removeFromFarm(animals.stream()
+        .filter(animal -> ThreadLocalRandom.current().nextBoolean())
+        .collect(Collectors.toList()));
+    IntStream.range(0, 50)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .forEach(animalService::addToFarm);
+    animalService.findAll().stream().limit(50).forEach(animalService::removeFromFarm);
+
+    JournalReplay replay = new JournalReplay();
+    List<JournalRecord> records = farmJournal.read(startOffset, 100);
+    while (!records.isEmpty()) {
+      records.forEach(replay);
+      records = farmJournal.read(replay.getNextOffset(), 100);
+    }
+
+    Map<Long, Long> animalBarns = animalService.findAll().stream()
+        .collect(Collectors.toMap(Animal::getId, animal -> animal.getBarn().getId()));
+    assertThat("Every animal should be in the barn the journal says.", replay.getAnimalBarns(), is(animalBarns));
+    assertThat("Every barn should be in the journal.", replay.getBarnColors().keySet(),
+        is(barnRepository.findAll().stream().map(Barn::getId).collect(Collectors.toSet())));
+  }
+
+  @Test
+  public void subscriberFollowsCommits() throws Exception {
+    long startOffset = farmJournal.getEndOffset();
+    JournalReplay replay = new JournalReplay();
+
+    try (MoveJournal.Subscription subscription = farmJournal.subscribe(startOffset, replay)) {
+      animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
+          .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+          .collect(Collectors.toList()));
+
+      long endOffset = farmJournal.getEndOffset();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (subscription.getNextOffset() < endOffset && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+    }
+
+    assertThat("Every committed animal should reach the subscriber.", replay.getAnimalBarns().size(),
+        is(ANIMAL_SEED));
+  }
+
+}
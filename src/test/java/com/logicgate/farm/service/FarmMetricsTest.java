@@ -0,0 +1,72 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Color;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class FarmMetricsTest {
+
+  private MeterRegistry meterRegistry;
+
+  private FarmMetrics farmMetrics;
+
+  @Before
+  public void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    farmMetrics = new FarmMetrics(meterRegistry);
+  }
+
+  @Test
+  public void metersAreTaggedByColor() {
+    farmMetrics.timeOperation("add", Color.RED, () -> farmMetrics.timePhase(FarmMetrics.Phase.PLANNING, Color.RED,
+        () -> farmMetrics.animalsMoved(Color.RED, 7)));
+    farmMetrics.barnsCreated(Color.RED, 2);
+    farmMetrics.barnsDestroyed(Color.BLUE, 1);
+
+    assertThat("The operation should be timed.",
+        meterRegistry.get("farm.operation").tag("operation", "add").tag("color", "red").timer().count(), is(1L));
+    assertThat("The phase should be timed.",
+        meterRegistry.get("farm.operation.phase").tag("phase", "planning").tag("color", "red").timer().count(), is(1L));
+    assertThat("Moved animals should be summarized per operation.",
+        meterRegistry.get("farm.animals.moved").tag("color", "red").summary().totalAmount(), is(7.0));
+    assertThat("Created barns should be counted by color.",
+        meterRegistry.get("farm.barns.created").tag("color", "red").counter().count(), is(2.0));
+    assertThat("Destroyed barns should be counted by color.",
+        meterRegistry.get("farm.barns.destroyed").tag("color", "blue").counter().count(), is(1.0));
+  }
+
+  @Test
+  public void lockQueueIsGauged() throws Exception {
+    ReentrantLock lock = new ReentrantLock();
+    farmMetrics.gaugeLockQueue(Color.GREEN, lock);
+
+    lock.lock();
+    CountDownLatch released = new CountDownLatch(1);
+    Thread waiter = new Thread(() -> {
+      lock.lock();
+      lock.unlock();
+      released.countDown();
+    });
+    waiter.start();
+    while (!lock.hasQueuedThreads()) {
+      Thread.yield();
+    }
+
+    assertThat("A waiting thread should be gauged.",
+        meterRegistry.get("farm.lock.queued").tag("color", "green").gauge().value(), is(1.0));
+    lock.unlock();
+    released.await();
+    assertThat("No thread should be waiting once the lock is released.",
+        meterRegistry.get("farm.lock.queued").tag("color", "green").gauge().value(), is(0.0));
+  }
+
+}
@@ -0,0 +1,165 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class FarmSnapshotServiceTest {
+
+  private static final int ANIMAL_SEED = 1000;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private FarmSnapshotService snapshotService;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void restoredFarmMatchesExportedFarm() throws Exception {
+    addAnimals(ANIMAL_SEED);
+    Set<Set<String>> barnLayout = barnLayout(animalService.findAll());
+
+    Path snapshot = temporaryFolder.newFile("farm.snapshot").toPath();
+    SnapshotResult exported = snapshotService.export(snapshot);
+    assertThat("Every animal should be exported.", exported.getAnimalCount(), is((long) ANIMAL_SEED));
+
+    emptyFarm();
+    SnapshotResult restored = snapshotService.restore(snapshot);
+    assertThat("Every barn should be restored.", restored.getBarnCount(), is(exported.getBarnCount()));
+    assertThat("Every animal should be restored.", restored.getAnimalCount(), is(exported.getAnimalCount()));
+
+    assertThat("Animals should share barns exactly as they did before.", barnLayout(animalService.findAll()),
+        is(barnLayout));
+    checkAnimals(ANIMAL_SEED);
+
+    // the restored farm is reorganized as usual, with new ids that don't collide with the restored ones
+    addAnimals(ANIMAL_SEED);
+    checkAnimals(ANIMAL_SEED * 2);
+  }
+
+  @Test
+  public void corruptSnapshotIsRejected() throws Exception {
+    addAnimals(ANIMAL_SEED);
+    Path snapshot = temporaryFolder.newFile("farm.snapshot").toPath();
+    snapshotService.export(snapshot);
+    emptyFarm();
+
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer lastByte = ByteBuffer.allocate(1);
+      channel.read(lastByte, channel.size() - 1);
+      lastByte.put(0, (byte) (lastByte.get(0) ^ 0xFF));
+      lastByte.rewind();
+      channel.write(lastByte, channel.size() - 1);
+    }
+
+    try {
+      snapshotService.restore(snapshot);
+      throw new AssertionError("A corrupt snapshot should not be restored.");
+    }
+    catch (IllegalStateException e) {
+      assertThat("Nothing should be restored.", animalRepository.count(), is(0L));
+    }
+  }
+
+  @Test
+  public void rolledBackExportLeavesNoSnapshot() throws Exception {
+    addAnimals(ANIMAL_SEED);
+    Path snapshot = temporaryFolder.getRoot().toPath().resolve("farm.snapshot");
+
+    new TransactionTemplate(transactionManager).execute(status -> {
+      snapshotService.export(snapshot);
+      status.setRollbackOnly();
+      return null;
+    });
+
+    assertThat("A snapshot should only be moved into place once its transaction commits.", Files.exists(snapshot),
+        is(false));
+    assertThat("Nothing should be left behind.", temporaryFolder.getRoot().list().length, is(0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void restoreNeedsAnEmptyFarm() throws Exception {
+    addAnimals(ANIMAL_SEED);
+    Path snapshot = temporaryFolder.newFile("farm.snapshot").toPath();
+    snapshotService.export(snapshot);
+
+    snapshotService.restore(snapshot);
+  }
+
+  private void addAnimals(int count) {
+    animalService.addToFarm(IntStream.range(0, count)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList()));
+  }
+
+  private void emptyFarm() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+    assertThat("The farm should be empty.", barnRepository.count(), is(0L));
+  }
+
+  // the names of the animals sharing each barn, whatever the barns' ids
+  private static Set<Set<String>> barnLayout(List<Animal> animals) {
+    Map<Long, Set<String>> namesByBarn = animals.stream().collect(Collectors.groupingBy(
+        animal -> animal.getBarn().getId(), Collectors.mapping(animal -> animal.getFavoriteColor() + animal.getName(),
+            Collectors.toSet())));
+    return namesByBarn.values().stream().collect(Collectors.toSet());
+  }
+
+  private void checkAnimals(int expected) {
+    FarmInvariants.checkAnimals(animalService, barnRepository, expected);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+}
@@ -0,0 +1,81 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class FarmStatsServiceTest {
+
+  private static final int ANIMAL_SEED = 1000;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private FarmStatsService farmStatsService;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void statsFollowWrites() {
+    animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList()));
+    animalService.removeFromFarm(animalService.findAll().stream()
+        .filter(animal -> ThreadLocalRandom.current().nextInt(4) == 0)
+        .collect(Collectors.toList()));
+    animalService.findAll().stream().limit(20).forEach(animalService::removeFromFarm);
+
+    // the full scan the stats spare their callers
+    List<Animal> animals = animalService.findAll();
+    FarmStats stats = farmStatsService.getStats();
+
+    assertThat("Every color should be reported.", stats.getColors().size(), is(Color.values().length));
+    assertThat("Animals should be totalled.", stats.getAnimalCount(), is((long) animals.size()));
+    assertThat("Barns should be totalled.", stats.getBarnCount(), is(barnRepository.count()));
+
+    for (Color color : Color.values()) {
+      Map<Long, Long> headCounts = animals.stream()
+          .filter(animal -> animal.getFavoriteColor() == color)
+          .collect(Collectors.groupingBy(animal -> animal.getBarn().getId(), Collectors.counting()));
+      Map<Integer, Long> histogram = headCounts.values().stream()
+          .collect(Collectors.groupingBy(Long::intValue, TreeMap::new, Collectors.counting()));
+      ColorStats colorStats = farmStatsService.getStats(color);
+
+      assertThat("Barns should be counted by color.", colorStats.getBarnCount(), is((long) headCounts.size()));
+      assertThat("Animals should be counted by color.", colorStats.getAnimalCount(),
+          is(headCounts.values().stream().mapToLong(Long::longValue).sum()));
+      assertThat("Barns should be grouped by head count.", colorStats.getOccupancyHistogram(), is(histogram));
+      assertThat("Free room should be what the barns don't use.", colorStats.getFreeCapacity(),
+          is(headCounts.size() * (long) FarmUtils.barnCapacity() - colorStats.getAnimalCount()));
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.repository.ColorPartitionRepository;
+import com.logicgate.farm.util.FarmUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Concurrent writers of an optimistic color next to writers of a locked one.
+ */
+@SpringBootTest(properties = {
+    "farm.locking.optimistic-colors=RED",
+    "farm.locking.max-attempts=100"})
+@RunWith(SpringRunner.class)
+public class OptimisticWriteTest {
+
+  private static final int WRITERS = 4;
+
+  private static final int ANIMALS_PER_WRITER = 60;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private ColorPartitionRepository partitionRepository;
+
+  @Autowired
+  private FarmSnapshotService snapshotService;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void conflictingWritersAllCommit() throws Exception {
+    ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+    List<Future<?>> pendingWrites = new ArrayList<>();
+    for (int i = 0; i < WRITERS; i++) {
+      pendingWrites.add(writers.submit(this::writeAnimals));
+    }
+    for (Future<?> pendingWrite : pendingWrites) {
+      pendingWrite.get();
+    }
+    writers.shutdown();
+
+    // every writer leaves two thirds of its animals behind
+    FarmInvariants.checkAnimals(animalService, barnRepository, WRITERS * ANIMALS_PER_WRITER * 2 / 3);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+    assertThat("No write should run out of attempts.", meterRegistry.find("farm.optimistic.exhausted").counter(),
+        nullValue());
+    assertThat("Locked colors should never conflict.",
+        meterRegistry.find("farm.optimistic.conflicts").tag("color", "blue").counter(), nullValue());
+    Counter conflicts = meterRegistry.find("farm.optimistic.conflicts").tag("color", "red").counter();
+    Counter retries = meterRegistry.find("farm.optimistic.retries").tag("color", "red").counter();
+    assertThat("Every conflict should have been retried.", retries == null ? 0.0 : retries.count(),
+        is(conflicts == null ? 0.0 : conflicts.count()));
+  }
+
+  @Test
+  public void exportLeavesOptimisticVersionAlone() throws Exception {
+    animalService.addToFarm(IntStream.range(0, 30)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), Color.RED))
+        .collect(Collectors.toList()));
+    Long layoutVersion = partitionRepository.findLayoutVersion(Color.RED);
+
+    snapshotService.export(temporaryFolder.newFile("farm.snapshot").toPath());
+
+    assertThat("Reading the farm should not fail optimistic writers that read it too.",
+        partitionRepository.findLayoutVersion(Color.RED), is(layoutVersion));
+  }
+
+  @Test
+  public void optimisticColorJoinsCallerTransaction() {
+    List<Animal> animals = IntStream.range(0, 30)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), Color.RED))
+        .collect(Collectors.toList());
+    // both writes share the caller's transaction and its single version check
+    new TransactionTemplate(transactionManager).execute(status -> {
+      animalService.addToFarm(animals);
+      animalService.updateFarm(Color.RED, Collections.emptyList(), animals.subList(0, 10));
+      return null;
+    });
+
+    FarmInvariants.checkAnimals(animalService, barnRepository, 20);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  // add single animals and batches of both colors, then take a third of them away again
+  private void writeAnimals() {
+    List<Animal> added = new ArrayList<>();
+    for (int i = 0; i < ANIMALS_PER_WRITER / 2; i++) {
+      added.add(animalService.addToFarm(new Animal(FarmUtils.animalName(i), i % 2 == 0 ? Color.RED : Color.BLUE)));
+    }
+    List<Animal> batch = IntStream.range(0, ANIMALS_PER_WRITER / 2)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), value % 2 == 0 ? Color.RED : Color.BLUE))
+        .collect(Collectors.toList());
+    animalService.addToFarm(batch);
+    added.addAll(batch);
+
+    List<Animal> departures = IntStream.range(0, added.size())
+        .filter(index -> index % 3 == 0)
+        .mapToObj(added::get)
+        .collect(Collectors.toList());
+    animalService.removeFromFarm(departures.subList(0, departures.size() / 2));
+    departures.subList(departures.size() / 2, departures.size()).forEach(animalService::removeFromFarm);
+  }
+
+}
@@ -0,0 +1,120 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A farm spread over three H2 file databases.
+ */
+@SpringBootTest(properties = {
+    "farm.sharding.enabled=true",
+    "farm.sharding.shards[0].url=jdbc:h2:file:./build/sharding-test/${random.uuid}/shard-0",
+    "farm.sharding.shards[1].url=jdbc:h2:file:./build/sharding-test/${random.uuid}/shard-1",
+    "farm.sharding.shards[2].url=jdbc:h2:file:./build/sharding-test/${random.uuid}/shard-2"})
+@RunWith(SpringRunner.class)
+public class ShardingTest {
+
+  private static final int ANIMAL_SEED = 1000;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @Autowired
+  private ColorShards colorShards;
+
+  @Autowired
+  private FarmStatsService farmStatsService;
+
+  @Autowired
+  private FarmSnapshotService farmSnapshotService;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    colorShards.fanOut(() -> barnRepository.deleteAll());
+  }
+
+  @Test
+  public void colorsStayOnTheirShard() {
+    animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), FarmUtils.randomColor()))
+        .collect(Collectors.toList()));
+    List<Animal> animals = animalService.findAll();
+    animalService.removeFromFarm(animals.stream()
+        .filter(animal -> ThreadLocalRandom.current().nextBoolean())
+        .collect(Collectors.toList()));
+    int remaining = animalService.findAll().size();
+
+    for (int shard = 0; shard < colorShards.getShardCount(); shard++) {
+      for (Barn barn : colorShards.onShard(shard, () -> barnRepository.findAll())) {
+        assertThat(String.format("Barn %d should be on the shard of its color.", barn.getId()),
+            colorShards.shardOf(barn.getColor()), is(shard));
+      }
+      for (Animal animal : colorShards.onShard(shard, () -> animalRepository.findAll())) {
+        assertThat(String.format("Animal %d should be on the shard of its color.", animal.getId()),
+            colorShards.shardOf(animal.getFavoriteColor()), is(shard));
+      }
+      colorShards.onShard(shard, () -> {
+        FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+        return null;
+      });
+    }
+
+    FarmStats stats = farmStatsService.getStats();
+    assertThat("Stats should count the animals of every shard.", stats.getAnimalCount(), is((long) remaining));
+    assertThat("Stats should count the barns of every shard.", stats.getBarnCount(),
+        is(colorShards.fanOut(shard -> barnRepository.count()).stream().mapToLong(Long::longValue).sum()));
+    assertThat("Streaming should merge every shard in id order.",
+        animalService.streamAll().map(Animal::getId).collect(Collectors.toList()),
+        is(animalService.findAll().stream().map(Animal::getId).sorted().collect(Collectors.toList())));
+  }
+
+  @Test
+  public void colorsAreSpreadOverEveryShard() {
+    for (Color color : Color.values()) {
+      animalService.addToFarm(new Animal(FarmUtils.animalName(0), color));
+    }
+
+    for (int shard = 0; shard < colorShards.getShardCount(); shard++) {
+      assertThat(String.format("Shard %d should hold some of the colors.", shard),
+          colorShards.onShard(shard, () -> animalRepository.count()) > 0, is(true));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void snapshotsNeedASingleDatabase() {
+    farmSnapshotService.export(Paths.get("build", "sharding-test", "farm.snapshot"));
+  }
+
+}
@@ -0,0 +1,160 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.FarmUtils;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * <p>
+ * Upper bounds on the JDBC statements each write issues, checked on a small farm and on one ten times its size.
+ * Every budget only allows for the barns an operation touches, so a change that makes an operation read, update or
+ * delete animal by animal across its color blows it on the larger farm.
+ * </p>
+ *
+ * <p>
+ * The farm is seeded a few animals short of full barns, so that every write but the last fits the barns already
+ * built.  The last one builds a barn, which moves animals out of every existing barn and is budgeted per barn.
+ * </p>
+ *
+ * <p>
+ * Writes also have to leave the second-level cache alone, barns included, so that barn lookups stay cache hits.
+ * </p>
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@RunWith(SpringRunner.class)
+public class StatementBudgetTest {
+
+  private static final Color COLOR = Color.RED;
+
+  private static final int[] BARN_COUNTS = {20, 200};
+
+  private static final int BATCH_SIZE = 10;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+
+  @Before
+  public void setUp() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void writesStayWithinBudget() {
+    for (int barnCount : BARN_COUNTS) {
+      // five short of full barns, so the writes below fit until the last one
+      animalService.addToFarm(animals(barnCount * FarmUtils.barnCapacity() - 5));
+
+      statistics.clear();
+      animalService.addToFarm(new Animal(FarmUtils.animalName(0), COLOR));
+      checkBudget("add", barnCount, 5, 1, 0);
+
+      Animal departure = housedAnimals().get(0);
+      statistics.clear();
+      animalService.removeFromFarm(departure);
+      checkBudget("remove", barnCount, 10, 0, 1);
+
+      List<Animal> departures = housedAnimals().subList(0, BATCH_SIZE);
+      statistics.clear();
+      animalService.removeFromFarm(departures);
+      checkBudget("remove.batch", barnCount, 10 + 4 * BATCH_SIZE, 0, 0);
+
+      statistics.clear();
+      animalService.addToFarm(animals(BATCH_SIZE));
+      checkBudget("add.batch", barnCount, 10 + 4 * BATCH_SIZE, BATCH_SIZE, 0);
+
+      List<Animal> replaced = housedAnimals().subList(0, BATCH_SIZE / 2);
+      statistics.clear();
+      animalService.updateFarm(COLOR, animals(BATCH_SIZE / 2), replaced);
+      checkBudget("update", barnCount, 10 + 4 * BATCH_SIZE, BATCH_SIZE / 2, 0);
+
+      // past the last full barn, the new barn takes an animal or so from every other one
+      statistics.clear();
+      animalService.addToFarm(animals(BATCH_SIZE));
+      checkBudget("add.barn", barnCount, 10 + 3 * barnCount, BATCH_SIZE + 1, 0);
+
+      animalService.deleteAll();
+      barnRepository.deleteAll();
+    }
+  }
+
+  @Test
+  public void writesKeepBarnsCached() {
+    // full barns, so the write below builds a barn and moves animals into it
+    animalService.addToFarm(animals(2 * FarmUtils.barnCapacity()));
+    List<Long> barnIds = barnRepository.findAll().stream().map(Barn::getId).collect(Collectors.toList());
+    barnIds.forEach(barnRepository::findById);
+
+    animalService.addToFarm(new Animal(FarmUtils.animalName(0), COLOR));
+
+    statistics.clear();
+    barnIds.forEach(barnRepository::findById);
+    assertThat("Barns should still be cached after a write.", statistics.getSecondLevelCacheHitCount(),
+        is((long) barnIds.size()));
+    assertThat("No barn lookup should go to the database after a write.", statistics.getSecondLevelCacheMissCount(),
+        is(0L));
+  }
+
+  private void checkBudget(String operation, int barnCount, long maxStatements, long inserts, long deletes) {
+    String farm = String.format("%s on a farm of %d barns", operation, barnCount);
+    assertThat(String.format("Statements of %s should stay within budget.", farm),
+        statistics.getPrepareStatementCount(), lessThanOrEqualTo(maxStatements));
+    assertThat(String.format("Entities inserted by %s should only be the new ones.", farm),
+        statistics.getEntityInsertCount(), is(inserts));
+    assertThat(String.format("Animals moved by %s should move with bulk statements, not entity updates.", farm),
+        statistics.getEntityUpdateCount(), is(0L));
+    assertThat(String.format("Animals removed by %s should go in bulk unless removed alone.", farm),
+        statistics.getEntityDeleteCount(), is(deletes));
+    assertThat(String.format("No animal should be loaded by %s beyond the one it removes.", farm),
+        statistics.getEntityLoadCount(), lessThanOrEqualTo(deletes + 1));
+  }
+
+  private List<Animal> animals(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), COLOR))
+        .collect(Collectors.toList());
+  }
+
+  // read before the counters are cleared, the scan is not part of any budget
+  private List<Animal> housedAnimals() {
+    List<Animal> animals = animalService.findAll();
+    Collections.shuffle(animals);
+    return animals;
+  }
+
+}
@@ -0,0 +1,117 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Barn;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.BarnOccupancyIndex;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A snapshot of a striped color whose barns drifted apart and haven't been rebalanced yet.
+ */
+@SpringBootTest(properties = {
+    "farm.locking.stripes.RED=4",
+    // the balancer is kept out of the way, the export has to even the barns out by itself
+    "farm.locking.stripe-balance-millis=3600000"})
+@RunWith(SpringRunner.class)
+public class StripedSnapshotTest {
+
+  // two barns four short of full, so animals can be moved from one to the other
+  private static final int ANIMAL_SEED = 2 * FarmUtils.barnCapacity() - 4;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private FarmSnapshotService snapshotService;
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @Autowired
+  private BarnOccupancyIndex occupancyIndex;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void unbalancedStripesAreExportedBalanced() throws Exception {
+    animalService.addToFarm(IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), Color.RED))
+        .collect(Collectors.toList()));
+    unbalance(2);
+    assertThat("The barns should have drifted apart.", spread(), is(4));
+
+    Path snapshot = temporaryFolder.newFile("farm.snapshot").toPath();
+    snapshotService.export(snapshot);
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+    snapshotService.restore(snapshot);
+
+    FarmInvariants.checkAnimals(animalService, barnRepository, ANIMAL_SEED);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  // move animals from one barn to the other, as single adds to different stripes may leave them
+  private void unbalance(int animalCount) {
+    new TransactionTemplate(transactionManager).execute(status -> {
+      List<Barn> barns = barnRepository.findBarnsByColor(Color.RED);
+      Barn fuller = barns.get(0);
+      Barn emptier = barns.get(1);
+      animalRepository.moveAnimalsToBarn(fuller,
+          animalRepository.findAnimalIdsByBarnId(emptier.getId(), PageRequest.of(0, animalCount)));
+      occupancyRepository.recountHeadCounts(Arrays.asList(fuller.getId(), emptier.getId()));
+      return null;
+    });
+    occupancyIndex.invalidate(Color.RED);
+  }
+
+  private int spread() {
+    List<Integer> headCounts = animalRepository.countAnimalsByBarn(Color.RED).stream()
+        .map(headCount -> headCount.getHeadCount().intValue())
+        .collect(Collectors.toList());
+    return headCounts.stream().mapToInt(Integer::intValue).max().getAsInt()
+        - headCounts.stream().mapToInt(Integer::intValue).min().getAsInt();
+  }
+
+}
@@ -0,0 +1,142 @@
+package com.logicgate.farm.service;
+
+import com.logicgate.farm.FarmInvariants;
+import com.logicgate.farm.domain.Animal;
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.repository.BarnOccupancyRepository;
+import com.logicgate.farm.repository.BarnRepository;
+import com.logicgate.farm.util.BarnOrganizer;
+import com.logicgate.farm.util.FarmUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Concurrent single adds of a color split into four lock stripes, next to writers that lock the color as a whole.
+ */
+@SpringBootTest(properties = {
+    "farm.locking.stripes.RED=4",
+    "farm.locking.stripe-balance-millis=20"})
+@RunWith(SpringRunner.class)
+public class StripedWriteTest {
+
+  private static final int WRITERS = 4;
+
+  private static final int ANIMALS_PER_WRITER = 40;
+
+  // eight barns with room for ten more animals, so the first adds fit the stripes and later ones build barns
+  private static final int ANIMAL_SEED = 150;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private BarnRepository barnRepository;
+
+  @Autowired
+  private BarnOccupancyRepository occupancyRepository;
+
+  @Autowired
+  private FarmStatsService farmStatsService;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+    barnRepository.deleteAll();
+  }
+
+  @Test
+  public void stripedAddsAreRebalanced() throws Exception {
+    animalService.addToFarm(animals(ANIMAL_SEED));
+
+    ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+    List<Future<?>> pendingWrites = new ArrayList<>();
+    for (int i = 0; i < WRITERS; i++) {
+      pendingWrites.add(writers.submit(this::writeAnimals));
+    }
+    for (Future<?> pendingWrite : pendingWrites) {
+      pendingWrite.get();
+    }
+    writers.shutdown();
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!balanced() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    // every writer leaves a quarter of its animals behind
+    FarmInvariants.checkAnimals(animalService, barnRepository, ANIMAL_SEED + WRITERS * ANIMALS_PER_WRITER * 3 / 4);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+    assertThat("No rebalance should fail.", meterRegistry.find("farm.stripes.balance.failures").counter(),
+        nullValue());
+  }
+
+  @Test
+  public void stripedColorJoinsCallerTransaction() {
+    // the caller's transaction locks the whole color, so the batch after the single adds can't wait on itself
+    new TransactionTemplate(transactionManager).execute(status -> {
+      IntStream.range(0, 30).forEach(value -> animalService.addToFarm(new Animal(FarmUtils.animalName(value),
+          Color.RED)));
+      animalService.addToFarm(animals(30));
+      return null;
+    });
+
+    FarmInvariants.checkAnimals(animalService, barnRepository, 60);
+    FarmInvariants.checkOccupancy(animalRepository, barnRepository, occupancyRepository);
+  }
+
+  // single adds of the striped color, a batch of it, then a quarter of the animals taken away again one by one
+  private void writeAnimals() {
+    List<Animal> added = new ArrayList<>();
+    for (int i = 0; i < ANIMALS_PER_WRITER / 2; i++) {
+      added.add(animalService.addToFarm(new Animal(FarmUtils.animalName(i), Color.RED)));
+    }
+    List<Animal> batch = animals(ANIMALS_PER_WRITER / 2);
+    animalService.addToFarm(batch);
+    added.addAll(batch);
+    added.stream().limit(ANIMALS_PER_WRITER / 4).forEach(animalService::removeFromFarm);
+  }
+
+  // the striped color in as few barns as it needs, spread evenly, as read from the occupancy summary
+  private boolean balanced() {
+    ColorStats stats = farmStatsService.getStats(Color.RED);
+    return stats.getBarnCount() == BarnOrganizer.barnsRequired(stats.getAnimalCount())
+        && stats.getOccupancyHistogram().lastKey() - stats.getOccupancyHistogram().firstKey() <= 1;
+  }
+
+  private static List<Animal> animals(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(value -> new Animal(FarmUtils.animalName(value), Color.RED))
+        .collect(Collectors.toList());
+  }
+
+}
@@ -12,6 +12,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -19,6 +20,7 @@ import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.comparesEqualTo;
+import static org.hamcrest.Matchers.contains;
 
 @SpringBootTest
 @RunWith(SpringRunner.class)
@@ -223,4 +225,70 @@ public class BarnOrganizerTest {
 
   }
 
+  @Test
+  public void planWithBarnDecrease() {
+
+    // retrieve new BarnOrganizer from context
+    BarnOrganizer barnOrganizer = applicationContext.getBean(BarnOrganizer.class);
+
+    // head counts keyed by barn id
+    Map<Long, Integer> headCounts = new LinkedHashMap<>();
+    headCounts.put(1L, 19);
+    headCounts.put(2L, 20);
+    headCounts.put(3L, 1);
+
+    RebalancePlan plan = barnOrganizer.planMoves(headCounts, 0);
+
+    int movedCount = plan.getMoves().stream().mapToInt(BarnMove::getAnimalCount).sum();
+
+    assertThat("Should drain the extra barn", plan.getDrainedBarnIds(), contains(3L));
+    assertThat("Should only move the animal from the drained barn", movedCount, comparesEqualTo(1));
+    assertThat("Should fill the remaining barns", plan.getTargetCounts().get(1L), comparesEqualTo(20));
+
+  }
+
+  @Test
+  public void planWithArrivals() {
+
+    // retrieve new BarnOrganizer from context
+    BarnOrganizer barnOrganizer = applicationContext.getBean(BarnOrganizer.class);
+
+    // a full barn and a newly built one
+    Map<Long, Integer> headCounts = new LinkedHashMap<>();
+    headCounts.put(1L, 20);
+    headCounts.put(2L, 0);
+
+    RebalancePlan plan = barnOrganizer.planMoves(headCounts, 1);
+
+    int arrivalCount = plan.getMoves().stream().filter(BarnMove::isArrival).mapToInt(BarnMove::getAnimalCount).sum();
+    int movedCount = plan.getMoves().stream().mapToInt(BarnMove::getAnimalCount).sum();
+
+    assertThat("Should house the arriving animal", arrivalCount, comparesEqualTo(1));
+    assertThat("Should move animals into the new barn", movedCount, comparesEqualTo(10));
+    assertThat("Should balance the larger barn", plan.getTargetCounts().get(1L), comparesEqualTo(11));
+    assertThat("Should balance the new barn", plan.getTargetCounts().get(2L), comparesEqualTo(10));
+
+  }
+
+  @Test
+  public void planWithMinimalMoves() {
+
+    // retrieve new BarnOrganizer from context
+    BarnOrganizer barnOrganizer = applicationContext.getBean(BarnOrganizer.class);
+
+    // head counts keyed by barn id, least populated first
+    Map<Long, Integer> headCounts = new LinkedHashMap<>();
+    headCounts.put(1L, 1);
+    headCounts.put(2L, 19);
+    headCounts.put(3L, 20);
+    headCounts.put(4L, 20);
+
+    RebalancePlan plan = barnOrganizer.planMoves(headCounts, 0);
+
+    assertThat("Should drain the least populated barn", plan.getDrainedBarnIds(), contains(1L));
+    assertThat("Should only move the animal from the drained barn", plan.getMovedAnimalCount(), comparesEqualTo(1));
+    assertThat("Should keep the full barns untouched", plan.getTargetCounts().get(3L), comparesEqualTo(20));
+
+  }
+
 }
@@ -0,0 +1,94 @@
+package com.logicgate.farm.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class LayoutEngineTest {
+
+  @Test
+  public void assignWithBarnDecrease() {
+    // 19, 20 and 1 animals fit in two barns, the barn holding a single animal is drained
+    long[] barnIds = {11L, 12L, 13L};
+    long[] animalBarnIds = housed(barnIds, 19, 20, 1);
+
+    LayoutPlan plan = LayoutEngine.assign(barnIds, animalBarnIds);
+
+    assertThat("Barns should be balanced.", headCounts(barnIds, animalBarnIds), is(new int[] {20, 20, 0}));
+    assertThat("Only the animal of the drained barn should move.", plan.movedAnimalCount(), is(1L));
+    assertThat("The drained barn should have no target.", plan.targetCount(2), is(0));
+  }
+
+  @Test
+  public void assignWithArrivals() {
+    // a full barn and a new empty one, plus three animals that still need a barn
+    long[] barnIds = {21L, 22L};
+    long[] animalBarnIds = Arrays.copyOf(housed(barnIds, 20, 0), 23);
+    Arrays.fill(animalBarnIds, 20, 23, LayoutEngine.NO_BARN);
+
+    LayoutPlan plan = LayoutEngine.assign(barnIds, animalBarnIds);
+
+    assertThat("Every animal should be housed and barns balanced.", headCounts(barnIds, animalBarnIds),
+        is(new int[] {12, 11}));
+    assertThat("Housed animals should only move to make room.", plan.movedAnimalCount(), is(8L));
+    assertThat("Arrivals should be housed before housed animals move.",
+        Arrays.stream(animalBarnIds, 20, 23).allMatch(barnId -> barnId == 22L), is(true));
+  }
+
+  @Test
+  public void assignLargeColor() {
+    int animalCount = 1_000_003;
+    int barnCount = BarnOrganizer.barnsRequired(animalCount) + 7;
+    long[] barnIds = new long[barnCount];
+    long[] animalBarnIds = new long[animalCount];
+    for (int barn = 0; barn < barnCount; barn++) {
+      barnIds[barn] = 1000L + barn * 3L;
+    }
+    // everything piled into the first barns, ten over capacity each
+    for (int animal = 0; animal < animalCount; animal++) {
+      animalBarnIds[animal] = barnIds[Math.min(animal / (FarmUtils.barnCapacity() + 10), barnCount - 1)];
+    }
+
+    LayoutEngine.assign(barnIds, animalBarnIds);
+
+    int[] headCounts = headCounts(barnIds, animalBarnIds);
+    int max = Arrays.stream(headCounts).filter(count -> count > 0).max().orElse(0);
+    int min = Arrays.stream(headCounts).filter(count -> count > 0).min().orElse(0);
+    assertThat("Every animal should be housed.", Arrays.stream(headCounts).sum(), is(animalCount));
+    assertThat("Barns should not exceed capacity.", max, lessThanOrEqualTo(FarmUtils.barnCapacity()));
+    assertThat("Animal distribution should maximize free barn space.", max - min, lessThanOrEqualTo(1));
+    assertThat("Optimal barns should exist for capacity requirements.",
+        (int) Arrays.stream(headCounts).filter(count -> count > 0).count(),
+        is(BarnOrganizer.barnsRequired(animalCount)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void assignToUnknownBarn() {
+    LayoutEngine.assign(new long[] {1L}, new long[] {2L});
+  }
+
+  private static long[] housed(long[] barnIds, int... headCounts) {
+    long[] animalBarnIds = new long[Arrays.stream(headCounts).sum()];
+    int animal = 0;
+    for (int barn = 0; barn < barnIds.length; barn++) {
+      for (int i = 0; i < headCounts[barn]; i++) {
+        animalBarnIds[animal++] = barnIds[barn];
+      }
+    }
+    return animalBarnIds;
+  }
+
+  // barn ids are given in ascending order throughout, so barns can be found by binary search
+  private static int[] headCounts(long[] barnIds, long[] animalBarnIds) {
+    int[] headCounts = new int[barnIds.length];
+    for (long animalBarnId : animalBarnIds) {
+      headCounts[Arrays.binarySearch(barnIds, animalBarnId)]++;
+    }
+    return headCounts;
+  }
+
+}
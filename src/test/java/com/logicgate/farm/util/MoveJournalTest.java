@@ -0,0 +1,154 @@
+package com.logicgate.farm.util;
+
+import com.logicgate.farm.domain.Color;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class MoveJournalTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void recordsAreReadBackAcrossSegments() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (MoveJournal journal = new MoveJournal(directory, 4, true)) {
+      assertThat("Appends should report the new end.", journal.append(animalsAdded(0, 10)), is(10L));
+
+      assertThat("Records should be split over segments.", segmentCount(directory), is(3L));
+      List<JournalRecord> records = readAll(journal, 0);
+      assertThat("Every record should be read back in order.",
+          records.stream().map(JournalRecord::getAnimalId).collect(Collectors.toList()),
+          is(LongStream.range(0, 10).boxed().collect(Collectors.toList())));
+      assertThat("Records should carry their offset.", records.get(6).getOffset(), is(6L));
+      assertThat("Reads can start at any offset.", journal.read(5, 2).get(0).getAnimalId(), is(5L));
+    }
+  }
+
+  @Test
+  public void reopenedJournalContinuesAfterLastWholeRecord() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (MoveJournal journal = new MoveJournal(directory, 4, false)) {
+      journal.append(animalsAdded(0, 6));
+    }
+
+    // a crash half way through writing a record
+    Path lastSegment = segments(directory).get(1);
+    try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[JournalRecord.SIZE / 2]));
+    }
+
+    try (MoveJournal journal = new MoveJournal(directory, 4, false)) {
+      assertThat("The partial record should be dropped.", journal.getEndOffset(), is(6L));
+      journal.append(animalsAdded(6, 1));
+      assertThat("Appends should continue where the journal ended.", readAll(journal, 0).size(), is(7));
+      assertThat("The appended record should follow the others.", journal.read(6, 1).get(0).getAnimalId(), is(6L));
+    }
+  }
+
+  @Test
+  public void subscriptionFollowsAppends() throws Exception {
+    try (MoveJournal journal = new MoveJournal(temporaryFolder.newFolder().toPath(), 4, false)) {
+      journal.append(animalsAdded(0, 3));
+
+      List<JournalRecord> received = new CopyOnWriteArrayList<>();
+      try (MoveJournal.Subscription subscription = journal.subscribe(1, received::add)) {
+        journal.append(animalsAdded(3, 5));
+        awaitOffset(subscription, 8);
+
+        assertThat("Records should be handed out from the subscribed offset on.",
+            received.stream().map(JournalRecord::getOffset).collect(Collectors.toList()),
+            is(LongStream.range(1, 8).boxed().collect(Collectors.toList())));
+        assertThat("The subscription should still be running.", subscription.isRunning(), is(true));
+      }
+    }
+  }
+
+  @Test
+  public void subscriptionFollowsDurableAppends() throws Exception {
+    try (MoveJournal journal = new MoveJournal(temporaryFolder.newFolder().toPath(), 4, true)) {
+      List<JournalRecord> received = new CopyOnWriteArrayList<>();
+      try (MoveJournal.Subscription subscription = journal.subscribe(0, received::add)) {
+        journal.append(animalsAdded(0, 6));
+        awaitOffset(subscription, 6);
+
+        assertThat("Records should be handed out once they are on disk.", received.size(), is(6));
+      }
+    }
+  }
+
+  @Test
+  public void replayRebuildsBarns() throws Exception {
+    try (MoveJournal journal = new MoveJournal(temporaryFolder.newFolder().toPath(), 4, false)) {
+      journal.append(Arrays.asList(
+          JournalRecord.barnCreated(Color.RED, 1),
+          JournalRecord.animalAdded(Color.RED, 10, 1),
+          JournalRecord.animalAdded(Color.RED, 11, 1),
+          JournalRecord.barnCreated(Color.RED, 2),
+          JournalRecord.animalMoved(Color.RED, 11, 2),
+          JournalRecord.animalRemoved(Color.RED, 10, 1),
+          JournalRecord.barnDestroyed(Color.RED, 1)));
+
+      JournalReplay replay = JournalReplay.replay(journal);
+
+      assertThat("Every record should be replayed.", replay.getNextOffset(), is(7L));
+      assertThat("Animals should be in the barn they last moved to.", replay.getAnimalBarns(),
+          is(Collections.singletonMap(11L, 2L)));
+      assertThat("Destroyed barns should be gone.", replay.getBarnColors(),
+          is(Collections.singletonMap(2L, Color.RED)));
+    }
+  }
+
+  private static List<JournalRecord> animalsAdded(long firstId, int count) {
+    return LongStream.range(firstId, firstId + count)
+        .mapToObj(id -> JournalRecord.animalAdded(Color.GREEN, id, 1))
+        .collect(Collectors.toList());
+  }
+
+  private static List<JournalRecord> readAll(MoveJournal journal, long fromOffset) throws Exception {
+    List<JournalRecord> records = new ArrayList<>();
+    List<JournalRecord> batch = journal.read(fromOffset, 3);
+    while (!batch.isEmpty()) {
+      records.addAll(batch);
+      batch = journal.read(fromOffset + records.size(), 3);
+    }
+    return records;
+  }
+
+  private static List<Path> segments(Path directory) throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static long segmentCount(Path directory) throws Exception {
+    return segments(directory).size();
+  }
+
+  private static void awaitOffset(MoveJournal.Subscription subscription, long offset) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (subscription.getNextOffset() < offset && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+}
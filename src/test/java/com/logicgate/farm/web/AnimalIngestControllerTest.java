@@ -0,0 +1,90 @@
+package com.logicgate.farm.web;
+
+import com.logicgate.farm.domain.Color;
+import com.logicgate.farm.repository.AnimalRepository;
+import com.logicgate.farm.service.AnimalService;
+import com.logicgate.farm.util.FarmUtils;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "farm.ingest.stream-chunk-size=100")
+@AutoConfigureMockMvc
+@RunWith(SpringRunner.class)
+public class AnimalIngestControllerTest {
+
+  private static final int ANIMAL_SEED = 1000;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AnimalRepository animalRepository;
+
+  @Autowired
+  private AnimalService animalService;
+
+  @After
+  public void tearDown() {
+    animalService.deleteAll();
+  }
+
+  @Test
+  public void streamAnimalsToFarm() throws Exception {
+    String body = IntStream.range(0, ANIMAL_SEED)
+        .mapToObj(value -> String.format("{\"name\":\"%s\",\"favoriteColor\":\"%s\"}",
+            FarmUtils.animalName(value), FarmUtils.randomColor().name()))
+        .collect(Collectors.joining("\n"));
+
+    mockMvc.perform(post("/animals/stream").contentType(AnimalIngestController.NDJSON).content(body))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.acceptedCount").value(ANIMAL_SEED))
+        .andExpect(jsonPath("$.failedCount").value(0));
+
+    assertThat("Every streamed animal should be persisted.", animalRepository.count(), is((long) ANIMAL_SEED));
+  }
+
+  @Test
+  public void rejectAnimalWithoutColor() throws Exception {
+    String body = String.format("{\"name\":\"%s\",\"favoriteColor\":\"%s\"}\n{\"name\":\"%s\"}",
+        FarmUtils.animalName(0), Color.RED.name(), FarmUtils.animalName(1));
+
+    mockMvc.perform(post("/animals/stream").contentType(AnimalIngestController.NDJSON).content(body))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.rejectedLine").value(2))
+        .andExpect(jsonPath("$.acceptedCount").value(0));
+  }
+
+  @Test
+  public void rejectionReportsCommittedChunks() throws Exception {
+    // a chunk and a half of good animals, then one that can't be read
+    String body = IntStream.range(0, 150)
+        .mapToObj(value -> String.format("{\"name\":\"%s\",\"favoriteColor\":\"%s\"}",
+            FarmUtils.animalName(value), FarmUtils.randomColor().name()))
+        .collect(Collectors.joining("\n")) + "\n{\"name\":\"Animal-150\",\"favoriteColor\":\"PLAID\"}";
+
+    mockMvc.perform(post("/animals/stream").contentType(AnimalIngestController.NDJSON).content(body))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.rejectedLine").value(151))
+        .andExpect(jsonPath("$.acceptedCount").value(100));
+
+    assertThat("Only the chunk committed before the bad line should be persisted.", animalRepository.count(),
+        is(100L));
+  }
+
+}